@@ -0,0 +1,123 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Two letter ISO 3166-1 country code
+ * <p>
+ * Every code has exactly one canonical instance, so instances can be compared by identity. Each code also
+ * has a stable ordinal in range of [0, {@link #COUNT}), derived from its letters.
+ *
+ * @author Mark Vainomaa
+ */
+public final class CountryCode {
+    /**
+     * Number of possible country codes, and an upper bound for {@link #getOrdinal()}
+     */
+    public static final int COUNT = 26 * 26;
+    private static final CountryCode[] codes = new CountryCode[COUNT];
+
+    private final String code;
+    private final int ordinal;
+
+    private CountryCode(String code, int ordinal) {
+        this.code = code;
+        this.ordinal = ordinal;
+    }
+
+    /**
+     * Gets country ISO code
+     *
+     * @return Country ISO code
+     */
+    @NonNull
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * Gets country code ordinal
+     *
+     * @return Country code ordinal
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    @Override
+    public String toString() {
+        return code;
+    }
+
+    /**
+     * Gets country code by its ISO code
+     *
+     * @param code Two letter country ISO code, case insensitive
+     * @return Canonical {@link CountryCode} instance
+     * @throws IllegalArgumentException If given code is not a two letter code
+     */
+    @NonNull
+    public static CountryCode of(@NonNull String code) {
+        int ordinal = code.length() == 2 ? ordinalOf(code.charAt(0), code.charAt(1)) : -1;
+        if (ordinal < 0) {
+            throw new IllegalArgumentException("Invalid country code: " + code);
+        }
+        return codes[ordinal];
+    }
+
+    /**
+     * Gets country code by its ordinal
+     *
+     * @param ordinal Country code ordinal
+     * @return Canonical {@link CountryCode} instance, or null if ordinal is out of range
+     */
+    @Nullable
+    public static CountryCode byOrdinal(int ordinal) {
+        return ordinal >= 0 && ordinal < COUNT ? codes[ordinal] : null;
+    }
+
+    private static int ordinalOf(char first, char second) {
+        int firstIndex = Character.toUpperCase(first) - 'A';
+        int secondIndex = Character.toUpperCase(second) - 'A';
+        if (firstIndex < 0 || firstIndex >= 26 || secondIndex < 0 || secondIndex >= 26) {
+            return -1;
+        }
+        return firstIndex * 26 + secondIndex;
+    }
+
+    static {
+        for (int first = 0; first < 26; first++) {
+            for (int second = 0; second < 26; second++) {
+                int ordinal = first * 26 + second;
+                String code = new String(new char[] { (char) ('A' + first), (char) ('A' + second) }).intern();
+                codes[ordinal] = new CountryCode(code, ordinal);
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Arrays;
+import java.util.StringJoiner;
+
+/**
+ * Immutable set of {@link CountryCode}s, backed by a bitset over country code ordinals
+ *
+ * @author Mark Vainomaa
+ */
+public final class CountrySet {
+    private static final CountrySet EMPTY = new CountrySet(new long[(CountryCode.COUNT + 63) >>> 6]);
+    private final long[] words;
+
+    private CountrySet(long[] words) {
+        this.words = words;
+    }
+
+    /**
+     * Checks whether given country is in this set
+     *
+     * @param country Country code to check, may be null
+     * @return Whether country is in this set. Always false for null
+     */
+    public boolean contains(@Nullable CountryCode country) {
+        return country != null && contains(country.getOrdinal());
+    }
+
+    /**
+     * Checks whether country with given ordinal is in this set
+     *
+     * @param ordinal Country code ordinal, see {@link CountryCode#getOrdinal()}
+     * @return Whether country is in this set. Always false for out of range ordinals
+     */
+    public boolean contains(int ordinal) {
+        return ordinal >= 0 && ordinal < CountryCode.COUNT && (words[ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * Checks whether this set is empty
+     *
+     * @return Whether this set is empty
+     */
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets number of countries in this set
+     *
+     * @return Number of countries in this set
+     */
+    public int size() {
+        int size = 0;
+        for (long word : words) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Arrays.equals(words, ((CountrySet) o).words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "[", "]");
+        for (int ordinal = 0; ordinal < CountryCode.COUNT; ordinal++) {
+            if (contains(ordinal)) {
+                joiner.add(CountryCode.byOrdinal(ordinal).getCode());
+            }
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * Gets an empty country set
+     *
+     * @return Empty country set
+     */
+    @NonNull
+    public static CountrySet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a country set from given country codes
+     *
+     * @param countries Country codes
+     * @return Country set
+     */
+    @NonNull
+    public static CountrySet of(@NonNull CountryCode @NonNull ... countries) {
+        long[] words = new long[EMPTY.words.length];
+        for (CountryCode country : countries) {
+            words[country.getOrdinal() >>> 6] |= 1L << country.getOrdinal();
+        }
+        return new CountrySet(words);
+    }
+
+    /**
+     * Creates a country set from given country ISO codes
+     *
+     * @param countries Two letter country ISO codes, case insensitive
+     * @return Country set
+     * @throws IllegalArgumentException If any of given codes is not a valid country code
+     */
+    @NonNull
+    public static CountrySet of(@NonNull String @NonNull ... countries) {
+        return copyOf(Arrays.asList(countries));
+    }
+
+    /**
+     * Creates a country set from given country ISO codes
+     *
+     * @param countries Two letter country ISO codes, case insensitive
+     * @return Country set
+     * @throws IllegalArgumentException If any of given codes is not a valid country code
+     */
+    @NonNull
+    public static CountrySet copyOf(@NonNull Iterable<@NonNull String> countries) {
+        long[] words = new long[EMPTY.words.length];
+        for (String code : countries) {
+            int ordinal = CountryCode.of(code).getOrdinal();
+            words[ordinal >>> 6] |= 1L << ordinal;
+        }
+        return new CountrySet(words);
+    }
+}
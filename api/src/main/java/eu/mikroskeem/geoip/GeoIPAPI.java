@@ -31,7 +31,11 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.net.InetAddress;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * Geo IP API
@@ -40,7 +44,7 @@ import java.util.concurrent.CompletableFuture;
  */
 public interface GeoIPAPI {
     /**
-     * Gets country by IP
+     * Gets country by IP. Lookup is done on the calling thread
      *
      * @param ipAddress IP address to query
      * @return Country ISO code, or null if no country was found for given address
@@ -49,7 +53,10 @@ public interface GeoIPAPI {
     String getCountryByIP(@NonNull InetAddress ipAddress);
 
     /**
-     * Gets country by IP
+     * Gets country by IP. Lookup is done on the calling thread
+     * <p>
+     * Hostnames are resolved like in {@link #getCountryCodeByHostnameAsync(String)}, blocking the calling
+     * thread at most for the configured resolve timeout.
      *
      * @param ipAddress IP address in a string form to query
      * @return Country ISO code, or null if no country was found for given address
@@ -59,6 +66,9 @@ public interface GeoIPAPI {
 
     /**
      * Gets country by IP asynchronously
+     * <p>
+     * Cached results are returned as an already completed future, which may be shared between callers.
+     * Do not complete or obtrude returned futures.
      *
      * @param ipAddress IP address to query
      * @return Country ISO code, or null if no country was found for given address
@@ -68,6 +78,8 @@ public interface GeoIPAPI {
 
     /**
      * Gets country by IP asynchronously
+     * <p>
+     * Hostnames are resolved like in {@link #getCountryCodeByHostnameAsync(String)}.
      *
      * @param ipAddress IP address in a string form to query
      * @return Country ISO code, or null if no country was found for given address
@@ -75,6 +87,159 @@ public interface GeoIPAPI {
     @NonNull
     CompletableFuture<@Nullable String> getCountryByIPAsync(@NonNull String ipAddress);
 
+    /**
+     * Gets country code by IP. Lookup is done on the calling thread
+     *
+     * @param ipAddress IP address to query
+     * @return Country code, or null if no country was found for given address
+     */
+    @Nullable
+    CountryCode getCountryCodeByIP(@NonNull InetAddress ipAddress);
+
+    /**
+     * Gets country code by IPv4 address. Lookup is done on the calling thread
+     *
+     * @param ipv4Address IPv4 address in network byte order, e.g. {@code 0x7F000001} for {@code 127.0.0.1}
+     * @return Country code, or null if no country was found for given address
+     */
+    @Nullable
+    CountryCode getCountryCodeByIP(int ipv4Address);
+
+    /**
+     * Gets country code by IPv6 address. Lookup is done on the calling thread
+     *
+     * @param high Upper 64 bits of the address
+     * @param low Lower 64 bits of the address
+     * @return Country code, or null if no country was found for given address
+     */
+    @Nullable
+    CountryCode getCountryCodeByIP(long high, long low);
+
+    /**
+     * Gets country code by raw IP address bytes in network byte order. Lookup is done on the calling thread
+     *
+     * @param address Array containing the address
+     * @param offset Offset of the address in the array
+     * @param length Length of the address, 4 for IPv4 and 16 for IPv6
+     * @return Country code, or null if no country was found for given address
+     * @throws IllegalArgumentException If length is not 4 or 16
+     */
+    @Nullable
+    CountryCode getCountryCodeByIP(byte @NonNull [] address, int offset, int length);
+
+    /**
+     * Gets country code by IP address literal. Lookup is done on the calling thread
+     * <p>
+     * Unlike {@link #getCountryByIP(String)}, this never resolves hostnames and does not allocate.
+     *
+     * @param ipAddress IPv4 address in dotted-quad form, or IPv6 address literal
+     * @return Country code, or null if no country was found for given address
+     * @throws IllegalArgumentException If given string is not an IP address literal
+     */
+    @Nullable
+    CountryCode getCountryCodeByIP(@NonNull CharSequence ipAddress);
+
+    /**
+     * Gets country code by hostname asynchronously
+     * <p>
+     * Hostnames are resolved on a dedicated thread pool with a timeout, and resolved addresses are cached
+     * for a limited time. IP address literals are looked up directly without resolving.
+     *
+     * @param hostname Hostname or IP address literal to query
+     * @return Country code, or null if no country was found for resolved address. Fails with
+     *         {@link java.net.UnknownHostException} if hostname does not resolve, or with
+     *         {@link java.util.concurrent.TimeoutException} if resolving takes too long
+     */
+    @NonNull
+    CompletableFuture<@Nullable CountryCode> getCountryCodeByHostnameAsync(@NonNull String hostname);
+
+    /**
+     * Gets country code by IP asynchronously
+     * <p>
+     * Cached results are returned as an already completed future, which may be shared between callers.
+     * Do not complete or obtrude returned futures.
+     *
+     * @param ipAddress IP address to query
+     * @return Country code, or null if no country was found for given address
+     */
+    @NonNull
+    CompletableFuture<@Nullable CountryCode> getCountryCodeByIPAsync(@NonNull InetAddress ipAddress);
+
+    /**
+     * Looks up country and matched network by IP. Lookup is done on the calling thread
+     *
+     * @param ipAddress IP address to query
+     * @return Lookup result
+     */
+    @NonNull
+    LookupResult lookup(@NonNull InetAddress ipAddress);
+
+    /**
+     * Looks up country and matched network by IP asynchronously
+     *
+     * @param ipAddress IP address to query
+     * @return Lookup result
+     */
+    @NonNull
+    CompletableFuture<@NonNull LookupResult> lookupAsync(@NonNull InetAddress ipAddress);
+
+    /**
+     * Gets countries for multiple IPs at once. Lookup is done on the calling thread
+     * <p>
+     * This is considerably cheaper than looking up every address separately, as all addresses get resolved
+     * in a single pass over the database.
+     *
+     * @param ipAddresses IP addresses to query
+     * @return Array of country codes in the iteration order of given collection. Array element is null if no country
+     *         was found for given address
+     */
+    @Nullable CountryCode @NonNull [] getCountriesByIP(@NonNull Collection<? extends @NonNull InetAddress> ipAddresses);
+
+    /**
+     * Gets countries for multiple IPs at once asynchronously
+     *
+     * @param ipAddresses IP addresses to query
+     * @return Array of country codes in the iteration order of given collection. Array element is null if no country
+     *         was found for given address
+     * @see #getCountriesByIP(Collection)
+     */
+    @NonNull
+    CompletableFuture<@Nullable CountryCode @NonNull []> getCountriesByIPAsync(@NonNull Collection<? extends @NonNull InetAddress> ipAddresses);
+
+    /**
+     * Looks up a potentially very large amount of IPs as a stream.
+     * <p>
+     * Addresses are consumed from given iterator lazily as the stream is consumed, on the consuming thread, and
+     * resolved in batches in the background. Only a bounded amount of batches is in flight at once, so memory usage
+     * doesn't depend on the amount of addresses.
+     *
+     * @param ipAddresses IP addresses to query
+     * @param ordered Whether results should be in the same order as addresses. Unordered stream yields results
+     *                as soon as they're available
+     * @return Stream of lookup results
+     */
+    @NonNull
+    Stream<@NonNull LookupResult> lookupStream(@NonNull Iterator<? extends @NonNull InetAddress> ipAddresses, boolean ordered);
+
+    /**
+     * Gets lookup result of an online player. Players are looked up once when they log in, so this
+     * never does a lookup itself
+     *
+     * @param uniqueId Player unique id
+     * @return Lookup result, or null if player is not online or their lookup hasn't finished yet
+     */
+    @Nullable
+    LookupResult getPlayerLookupResult(@NonNull UUID uniqueId);
+
+    /**
+     * Checks whether given IP address belongs to any of given countries. Lookup is done on the calling thread
+     *
+     * @param ipAddress IP address to query
+     * @param countries Set of countries
+     * @return Whether address was found to be in any of given countries
+     */
+    boolean isIn(@NonNull InetAddress ipAddress, @NonNull CountrySet countries);
+
     /**
      * Instance of {@link GeoIPAPI} - initialized on runtime
      */
@@ -0,0 +1,146 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Objects;
+
+/**
+ * Result of a country lookup, along with the network which the address matched
+ *
+ * @author Mark Vainomaa
+ */
+public final class LookupResult {
+    private final InetAddress address;
+    private final CountryCode country;
+    private final int prefixLength;
+
+    /**
+     * Constructs a lookup result
+     *
+     * @param address Looked up address
+     * @param country Country code, or null if no country was found for given address
+     * @param prefixLength Matched network prefix length, in the address family of given address
+     */
+    public LookupResult(@NonNull InetAddress address, @Nullable CountryCode country, int prefixLength) {
+        int maxPrefixLength = address.getAddress().length * 8;
+        if (prefixLength < 0 || prefixLength > maxPrefixLength) {
+            throw new IllegalArgumentException("Prefix length must be in range of [0, " + maxPrefixLength + "]");
+        }
+        this.address = address;
+        this.country = country;
+        this.prefixLength = prefixLength;
+    }
+
+    /**
+     * Gets looked up address
+     *
+     * @return Looked up address
+     */
+    @NonNull
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Gets country code
+     *
+     * @return Country code, or null if no country was found for looked up address
+     */
+    @Nullable
+    public CountryCode getCountry() {
+        return country;
+    }
+
+    /**
+     * Gets prefix length of the network which looked up address matched. Every address in that network
+     * resolves to the same country
+     *
+     * @return Network prefix length, 0-32 for IPv4 and 0-128 for IPv6 addresses
+     */
+    public int getPrefixLength() {
+        return prefixLength;
+    }
+
+    /**
+     * Gets address of the network which looked up address matched
+     *
+     * @return Network address
+     */
+    @NonNull
+    public InetAddress getNetworkAddress() {
+        byte[] raw = address.getAddress();
+        for (int i = 0; i < raw.length; i++) {
+            int bits = prefixLength - i * 8;
+            if (bits < 8) {
+                raw[i] &= (byte) (bits <= 0 ? 0 : 0xFF << (8 - bits));
+            }
+        }
+
+        try {
+            return InetAddress.getByAddress(raw);
+        } catch (UnknownHostException e) {
+            // Only thrown on illegal address length
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Gets the network which looked up address matched in CIDR notation
+     *
+     * @return Network in CIDR notation, e.g {@code 192.0.2.0/24}
+     */
+    @NonNull
+    public String getNetwork() {
+        return getNetworkAddress().getHostAddress() + "/" + prefixLength;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LookupResult that = (LookupResult) o;
+        return prefixLength == that.prefixLength && address.equals(that.address) && country == that.country;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(address, country, prefixLength);
+    }
+
+    @Override
+    public String toString() {
+        return "LookupResult{" +
+                "address=" + address.getHostAddress() +
+                ", country=" + country +
+                ", network=" + getNetwork() +
+                '}';
+    }
+}
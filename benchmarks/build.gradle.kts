@@ -0,0 +1,13 @@
+plugins {
+    id("me.champeau.gradle.jmh") version "0.4.8"
+}
+
+dependencies {
+    jmh(project(":common"))
+    jmh(project(":fixtures"))
+    jmh("com.pivovarit:throwing-function:${rootProject.extra["throwableFunctionVersion"]}")
+}
+
+jmh {
+    jmhVersion = "1.21"
+}
@@ -0,0 +1,141 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.benchmarks;
+
+import eu.mikroskeem.geoip.common.GeoIPDownloader;
+import eu.mikroskeem.geoip.fixtures.SyntheticDatabaseGenerator;
+import eu.mikroskeem.geoip.impl.GeoIPAPIImpl;
+import eu.mikroskeem.geoip.impl.GeoIPAPISettings;
+import eu.mikroskeem.geoip.impl.LookupEngineType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Locally generated database fixture and address sets shared by benchmarks
+ *
+ * @author Mark Vainomaa
+ */
+final class BenchmarkDatabase {
+    private static final long SEED = 42L;
+    private static final int NETWORK_COUNT = 100_000;
+    private static Path databaseFile;
+
+    private BenchmarkDatabase() {}
+
+    /**
+     * Gets the fixture database, generating it on first use. Networks between /12 and /24 cover most of the
+     * IPv4 space, and few IPv6 /32 networks are added
+     *
+     * @return Path to the database file
+     */
+    static synchronized Path getDatabaseFile() {
+        if (databaseFile != null) {
+            return databaseFile;
+        }
+
+        Map<Integer, Integer> ipv4PrefixLengths = new HashMap<>();
+        ipv4PrefixLengths.put(12, 2);
+        ipv4PrefixLengths.put(16, 10);
+        ipv4PrefixLengths.put(20, 30);
+        ipv4PrefixLengths.put(22, 30);
+        ipv4PrefixLengths.put(24, 28);
+        SyntheticDatabaseGenerator generator = new SyntheticDatabaseGenerator()
+                .setSeed(SEED)
+                .setNetworkCount(NETWORK_COUNT)
+                .setIpv6Share(0.04)
+                .setIpv4PrefixLengths(ipv4PrefixLengths)
+                .setIpv6PrefixLengths(Collections.singletonMap(32, 1));
+
+        try {
+            Path file = Files.createTempFile("geoipapi-benchmark", ".mmdb");
+            file.toFile().deleteOnExit();
+            generator.write(file);
+            return databaseFile = file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Sets up an API instance using the fixture database, in its own directory
+     *
+     * @param engine Lookup engine type
+     * @return Initialized API instance
+     */
+    static GeoIPAPIImpl createApi(LookupEngineType engine) throws IOException {
+        Path directory = Files.createTempDirectory("geoipapi-benchmark");
+        Path file = directory.resolve("geoip-country.db");
+        Files.copy(getDatabaseFile(), file);
+        Files.write(directory.resolve(GeoIPDownloader.LAST_ARCHIVE_MD5), "fixture".getBytes(StandardCharsets.UTF_8));
+
+        GeoIPAPIImpl api = new GeoIPAPIImpl(file, "", new GeoIPAPISettings().setLookupEngine(engine));
+        api.initializeDatabase();
+        return api;
+    }
+
+    /**
+     * Generates random IPv4 addresses
+     *
+     * @param count Amount of addresses
+     * @param distinctBlocks Amount of distinct /24 blocks addresses are picked from, or 0 for whole address space
+     * @param seed Random seed
+     * @return Addresses
+     */
+    static InetAddress[] randomAddresses(int count, int distinctBlocks, long seed) {
+        Random random = new Random(seed);
+        int[] blocks = new int[distinctBlocks];
+        for (int i = 0; i < distinctBlocks; i++) {
+            blocks[i] = random.nextInt() & 0xFFFFFF00;
+        }
+
+        InetAddress[] addresses = new InetAddress[count];
+        for (int i = 0; i < count; i++) {
+            int address = distinctBlocks > 0 ? blocks[random.nextInt(distinctBlocks)] | random.nextInt(256) : random.nextInt();
+            addresses[i] = toInetAddress(address);
+        }
+        return addresses;
+    }
+
+    private static InetAddress toInetAddress(int address) {
+        try {
+            return InetAddress.getByAddress(new byte[] {
+                    (byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address
+            });
+        } catch (UnknownHostException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
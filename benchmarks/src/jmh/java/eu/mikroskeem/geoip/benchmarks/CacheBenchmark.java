@@ -0,0 +1,95 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.benchmarks;
+
+import eu.mikroskeem.geoip.CountryCode;
+import eu.mikroskeem.geoip.impl.GeoIPAPIImpl;
+import eu.mikroskeem.geoip.impl.LookupEngineType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups answered from cache versus lookups going to the database
+ *
+ * @author Mark Vainomaa
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheBenchmark {
+    private static final int HOT_ADDRESS_COUNT = 1 << 10;
+    private static final int COLD_ADDRESS_COUNT = 1 << 20;
+
+    @Param({"DIRECT", "MAXMIND", "COMPILED"})
+    public LookupEngineType engine;
+
+    private GeoIPAPIImpl api;
+    private InetAddress[] hotAddresses;
+    private InetAddress[] coldAddresses;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        api = BenchmarkDatabase.createApi(engine);
+        hotAddresses = BenchmarkDatabase.randomAddresses(HOT_ADDRESS_COUNT, 256, 1L);
+        coldAddresses = BenchmarkDatabase.randomAddresses(COLD_ADDRESS_COUNT, 0, 2L);
+        for (InetAddress address : hotAddresses) {
+            api.getCountryCodeByIP(address);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        api.close();
+    }
+
+    @Benchmark
+    public CountryCode cacheHit() {
+        return api.getCountryCodeByIP(hotAddresses[next++ & (HOT_ADDRESS_COUNT - 1)]);
+    }
+
+    /* Addresses are spread over whole IPv4 space and outnumber cache capacity, so nearly every lookup misses */
+    @Benchmark
+    public CountryCode cacheMiss() {
+        return api.getCountryCodeByIP(coldAddresses[next++ & (COLD_ADDRESS_COUNT - 1)]);
+    }
+}
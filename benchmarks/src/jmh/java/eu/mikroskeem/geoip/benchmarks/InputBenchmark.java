@@ -0,0 +1,114 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.benchmarks;
+
+import eu.mikroskeem.geoip.CountryCode;
+import eu.mikroskeem.geoip.impl.GeoIPAPIImpl;
+import eu.mikroskeem.geoip.impl.LookupEngineType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of different address inputs, on a working set which fits into the cache
+ *
+ * @author Mark Vainomaa
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InputBenchmark {
+    private static final int ADDRESS_COUNT = 1 << 12;
+
+    @Param({"COMPILED"})
+    public LookupEngineType engine;
+
+    private GeoIPAPIImpl api;
+    private InetAddress[] addresses;
+    private String[] literals;
+    private int[] rawAddresses;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        api = BenchmarkDatabase.createApi(engine);
+        addresses = BenchmarkDatabase.randomAddresses(ADDRESS_COUNT, 1024, 1L);
+        literals = new String[ADDRESS_COUNT];
+        rawAddresses = new int[ADDRESS_COUNT];
+        for (int i = 0; i < ADDRESS_COUNT; i++) {
+            literals[i] = addresses[i].getHostAddress();
+            rawAddresses[i] = addresses[i].hashCode();
+            api.getCountryCodeByIP(addresses[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        api.close();
+    }
+
+    @Benchmark
+    public CountryCode inetAddress() {
+        return api.getCountryCodeByIP(addresses[next++ & (ADDRESS_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public CountryCode rawInt() {
+        return api.getCountryCodeByIP(rawAddresses[next++ & (ADDRESS_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public CountryCode literalCharSequence() {
+        return api.getCountryCodeByIP((CharSequence) literals[next++ & (ADDRESS_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public String literalString() {
+        return api.getCountryByIP(literals[next++ & (ADDRESS_COUNT - 1)]);
+    }
+
+    /* What string lookups used to cost */
+    @Benchmark
+    public CountryCode inetAddressGetByName() throws UnknownHostException {
+        return api.getCountryCodeByIP(InetAddress.getByName(literals[next++ & (ADDRESS_COUNT - 1)]));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.benchmarks;
+
+import eu.mikroskeem.geoip.CountryCode;
+import eu.mikroskeem.geoip.impl.GeoIPAPIImpl;
+import eu.mikroskeem.geoip.impl.LookupEngineType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synchronous, asynchronous and batched lookups, on a working set which fits into the cache
+ *
+ * @author Mark Vainomaa
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SyncAsyncBenchmark {
+    private static final int ADDRESS_COUNT = 1 << 14;
+    private static final int BATCH_SIZE = 64;
+
+    @Param({"DIRECT", "MAXMIND", "COMPILED"})
+    public LookupEngineType engine;
+
+    private GeoIPAPIImpl api;
+    private InetAddress[] addresses;
+    private List<List<InetAddress>> batches;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        api = BenchmarkDatabase.createApi(engine);
+        addresses = BenchmarkDatabase.randomAddresses(ADDRESS_COUNT, 4096, 1L);
+        batches = new ArrayList<>(ADDRESS_COUNT / BATCH_SIZE);
+        for (int i = 0; i < ADDRESS_COUNT / BATCH_SIZE; i++) {
+            batches.add(Arrays.asList(addresses).subList(i * BATCH_SIZE, (i + 1) * BATCH_SIZE));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        api.close();
+    }
+
+    private InetAddress nextAddress() {
+        return addresses[next++ & (ADDRESS_COUNT - 1)];
+    }
+
+    @Benchmark
+    public CountryCode sync() {
+        return api.getCountryCodeByIP(nextAddress());
+    }
+
+    @Benchmark
+    public CountryCode async() {
+        return api.getCountryCodeByIPAsync(nextAddress()).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public CountryCode[] batch() {
+        return api.getCountriesByIP(batches.get(next++ & (batches.size() - 1)));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.benchmarks;
+
+import eu.mikroskeem.geoip.CountryCode;
+import eu.mikroskeem.geoip.impl.GeoIPAPIImpl;
+import eu.mikroskeem.geoip.impl.LookupEngineType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup throughput while the database gets swapped in the background, compared to no updates at all
+ *
+ * @author Mark Vainomaa
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class UpdateSwapBenchmark {
+    private static final int ADDRESS_COUNT = 1 << 16;
+    private static final long UPDATE_INTERVAL_MILLIS = 250;
+
+    @Param({"DIRECT", "MAXMIND", "COMPILED"})
+    public LookupEngineType engine;
+
+    @Param({"false", "true"})
+    public boolean updating;
+
+    private GeoIPAPIImpl api;
+    private InetAddress[] addresses;
+    private Thread updater;
+    private volatile boolean running;
+
+    @Setup
+    public void setup() throws Exception {
+        api = BenchmarkDatabase.createApi(engine);
+        addresses = BenchmarkDatabase.randomAddresses(ADDRESS_COUNT, 8192, 1L);
+        if (!updating) {
+            return;
+        }
+
+        running = true;
+        updater = new Thread(() -> {
+            while (running) {
+                api.updateDatabase(updateInfo -> {
+                    Files.copy(BenchmarkDatabase.getDatabaseFile(), updateInfo.getUpdateFile(), StandardCopyOption.REPLACE_EXISTING);
+                    Files.write(updateInfo.getUpdateArchiveHashFile(), "fixture".getBytes(StandardCharsets.UTF_8));
+                    return true;
+                });
+                try {
+                    Thread.sleep(UPDATE_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "Benchmark database updater");
+        updater.setDaemon(true);
+        updater.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        if (updater != null) {
+            running = false;
+            updater.interrupt();
+            updater.join();
+        }
+        api.close();
+    }
+
+    @Benchmark
+    public CountryCode lookup() {
+        return api.getCountryCodeByIP(addresses[ThreadLocalRandom.current().nextInt(ADDRESS_COUNT)]);
+    }
+}
@@ -8,11 +8,11 @@ plugins {
 
 extra["implInjectorVersion"] = "0.0.2"
 extra["checkerQualVersion"] = "2.8.1"
-extra["geoipVersion"] = "2.12.0"
+extra["geoipVersion"] = "2.13.0"
 extra["commonsCompressVersion"] = "1.18"
-extra["expiringMapVersion"] = "0.5.9"
 extra["slf4jApiVersion"] = "1.7.25"
 extra["throwableFunctionVersion"] = "1.5.0"
+extra["junitVersion"] = "4.12"
 
 // Platform versions
 extra["paperApiVersion"] = "1.14.2-R0.1-SNAPSHOT"
@@ -63,7 +63,6 @@ val shadowJar by tasks.getting(ShadowJar::class) {
             "com.fasterxml.jackson",
             "com.maxmind",
             "com.pivovarit.function",
-            "net.jodah.expiringmap",
             "org.apache.commons.compress"
     )
     relocations.forEach {
@@ -23,11 +23,23 @@ bukkit {
         create("geoiplookup") {
             permission = "geoipapi.geoiplookup"
         }
+        create("geoipstats") {
+            permission = "geoipapi.geoipstats"
+        }
+        create("geoipupdate") {
+            permission = "geoipapi.geoipupdate"
+        }
     }
 
     permissions {
         create("geoipapi.geoiplookup") {
             default = BukkitPluginDescription.Permission.Default.OP
         }
+        create("geoipapi.geoipstats") {
+            default = BukkitPluginDescription.Permission.Default.OP
+        }
+        create("geoipapi.geoipupdate") {
+            default = BukkitPluginDescription.Permission.Default.OP
+        }
     }
 }
\ No newline at end of file
@@ -27,7 +27,9 @@ package eu.mikroskeem.geoip.bukkit;
 
 import eu.mikroskeem.geoip.GeoIPAPI;
 import eu.mikroskeem.geoip.common.GeoIPDownloader;
+import eu.mikroskeem.geoip.common.UpdateSource;
 import eu.mikroskeem.geoip.impl.GeoIPAPIImpl;
+import eu.mikroskeem.geoip.impl.GeoIPAPISettings;
 import eu.mikroskeem.implinjector.ImplInjector;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.PluginCommand;
@@ -36,7 +38,7 @@ import org.bukkit.plugin.java.JavaPlugin;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.concurrent.TimeUnit;
+import java.nio.file.Paths;
 import java.util.function.Supplier;
 
 /**
@@ -51,23 +53,28 @@ public final class GeoIPAPIPlugin extends JavaPlugin {
         // Load configuration
         saveDefaultConfig();
         String licenseKey = getConfig().getString("geolite_license_key");
-        if (licenseKey == null || licenseKey.isEmpty()) {
-            getSLF4JLogger().error("License key is not set, unable to download the database from MaxMind!");
-            shouldEnable = false;
-            return;
-        }
 
         // Set up database
         getSLF4JLogger().info("Setting up GeoIP database...");
-        Path databaseFolder = getDataFolder().toPath().resolve("database");
+        String sharedDatabaseFolder = getConfig().getString("shared_database_directory", "");
+        boolean sharedDatabase = !sharedDatabaseFolder.isEmpty();
+        Path databaseFolder = sharedDatabase ? Paths.get(sharedDatabaseFolder) : getDataFolder().toPath().resolve("database");
         Path hashIgnoreFile = getDataFolder().toPath().resolve(".ignorehash");
         boolean ignoreHash = Files.exists(hashIgnoreFile);
+        UpdateSource updateSource;
+        try {
+            updateSource = UpdateSource.fromName(getConfig().getString("update_source", "maxmind"), licenseKey, !ignoreHash, databaseFolder);
+        } catch (IllegalArgumentException e) {
+            getSLF4JLogger().error("Invalid update source: {}", e.getMessage());
+            shouldEnable = false;
+            return;
+        }
         Path databaseFile;
         try {
             if (ignoreHash) {
                 getSLF4JLogger().warn("Ignoring GeoIP database checksum mismatch");
             }
-            databaseFile = GeoIPDownloader.setupDatabase(null, databaseFolder, !ignoreHash, licenseKey);
+            databaseFile = GeoIPDownloader.setupDatabase(updateSource, databaseFolder);
         } catch (Exception e) {
             getSLF4JLogger().error("Failed to set up GeoIP database! Disabling plugin", e);
             shouldEnable = false;
@@ -75,10 +82,15 @@ public final class GeoIPAPIPlugin extends JavaPlugin {
         }
 
         // Set up API
-        api = new GeoIPAPIImpl(databaseFile, licenseKey);
+        GeoIPAPISettings settings = GeoIPAPISettings.fromConfig(getConfig()::get, getSLF4JLogger());
+        if (sharedDatabase) {
+            settings.setSharedDatabase(true).setInstanceDirectory(getDataFolder().toPath());
+        }
+
+        api = new GeoIPAPIImpl(databaseFile, licenseKey, settings);
         try {
             api.initializeDatabase();
-            api.setupUpdater(!ignoreHash, 2, TimeUnit.DAYS);
+            api.setupUpdater(updateSource, settings.getUpdateCheckInterval(), settings.getUpdateCheckIntervalUnit());
             ImplInjector.inject(GeoIPAPI.class, "INSTANCE", api);
         } catch (Exception e) {
             getSLF4JLogger().error("Failed to initialize API", e);
@@ -90,6 +102,8 @@ public final class GeoIPAPIPlugin extends JavaPlugin {
 
         // Register commands
         registerCommand("geoiplookup", GeoIpLookupCommand::new);
+        registerCommand("geoipstats", () -> new GeoIpStatsCommand(api.getMetrics()));
+        registerCommand("geoipupdate", () -> new GeoIpUpdateCommand(api));
     }
 
     @Override
@@ -98,6 +112,9 @@ public final class GeoIPAPIPlugin extends JavaPlugin {
             setEnabled(false);
             return;
         }
+
+        // Register event handlers
+        getServer().getPluginManager().registerEvents(new PlayerConnectionListener(api.getPlayerLookups()), this);
     }
 
     @Override
@@ -27,7 +27,9 @@ package eu.mikroskeem.geoip.bungee;
 
 import eu.mikroskeem.geoip.GeoIPAPI;
 import eu.mikroskeem.geoip.common.GeoIPDownloader;
+import eu.mikroskeem.geoip.common.UpdateSource;
 import eu.mikroskeem.geoip.impl.GeoIPAPIImpl;
+import eu.mikroskeem.geoip.impl.GeoIPAPISettings;
 import eu.mikroskeem.implinjector.ImplInjector;
 import net.md_5.bungee.api.ProxyServer;
 import net.md_5.bungee.api.plugin.Plugin;
@@ -40,7 +42,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.concurrent.TimeUnit;
+import java.nio.file.Paths;
 
 /**
  * @author Mark Vainomaa
@@ -63,23 +65,28 @@ public final class GeoIPAPIPlugin extends Plugin {
         }
 
         String licenseKey = config.getString("geolite_license_key");
-        if (licenseKey == null || licenseKey.isEmpty()) {
-            getSLF4JLogger().error("License key is not set, unable to download the database from MaxMind!");
-            shouldEnable = false;
-            return;
-        }
 
         // Set up database
         getSLF4JLogger().info("Setting up GeoIP database...");
-        Path databaseFolder = getDataFolder().toPath().resolve("database");
+        String sharedDatabaseFolder = config.getString("shared_database_directory", "");
+        boolean sharedDatabase = !sharedDatabaseFolder.isEmpty();
+        Path databaseFolder = sharedDatabase ? Paths.get(sharedDatabaseFolder) : getDataFolder().toPath().resolve("database");
         Path hashIgnoreFile = getDataFolder().toPath().resolve(".ignorehash");
         boolean ignoreHash = Files.exists(hashIgnoreFile);
+        UpdateSource updateSource;
+        try {
+            updateSource = UpdateSource.fromName(config.getString("update_source", "maxmind"), licenseKey, !ignoreHash, databaseFolder);
+        } catch (IllegalArgumentException e) {
+            getSLF4JLogger().error("Invalid update source: {}", e.getMessage());
+            shouldEnable = false;
+            return;
+        }
         Path databaseFile;
         try {
             if (ignoreHash) {
                 getSLF4JLogger().warn("Ignoring GeoIP database checksum mismatch");
             }
-            databaseFile = GeoIPDownloader.setupDatabase(null, databaseFolder, !ignoreHash, licenseKey);
+            databaseFile = GeoIPDownloader.setupDatabase(updateSource, databaseFolder);
         } catch (Exception e) {
             getSLF4JLogger().error("Failed to set up GeoIP database! Disabling plugin", e);
             shouldEnable = false;
@@ -87,10 +94,15 @@ public final class GeoIPAPIPlugin extends Plugin {
         }
 
         // Set up API
-        api = new GeoIPAPIImpl(databaseFile, licenseKey);
+        GeoIPAPISettings settings = GeoIPAPISettings.fromConfig(config::get, getSLF4JLogger());
+        if (sharedDatabase) {
+            settings.setSharedDatabase(true).setInstanceDirectory(getDataFolder().toPath());
+        }
+
+        api = new GeoIPAPIImpl(databaseFile, licenseKey, settings);
         try {
             api.initializeDatabase();
-            api.setupUpdater(!ignoreHash, 2, TimeUnit.DAYS);
+            api.setupUpdater(updateSource, settings.getUpdateCheckInterval(), settings.getUpdateCheckIntervalUnit());
             ImplInjector.inject(GeoIPAPI.class, "INSTANCE", api);
         } catch (Exception e) {
             getSLF4JLogger().error("Failed to initialize API", e);
@@ -102,7 +114,9 @@ public final class GeoIPAPIPlugin extends Plugin {
 
         // Register commands and event handlers
         getProxy().getPluginManager().registerCommand(this, new GeoIpLookupCommand());
-        getProxy().getPluginManager().registerListener(this, new PlayerConnectionListener());
+        getProxy().getPluginManager().registerCommand(this, new GeoIpStatsCommand(api.getMetrics()));
+        getProxy().getPluginManager().registerCommand(this, new GeoIpUpdateCommand(api));
+        getProxy().getPluginManager().registerListener(this, new PlayerConnectionListener(api.getPlayerLookups()));
     }
 
     @Override
@@ -25,7 +25,10 @@
 
 package eu.mikroskeem.geoip.bungee;
 
-import eu.mikroskeem.geoip.GeoIPAPI;
+import eu.mikroskeem.geoip.CountryCode;
+import eu.mikroskeem.geoip.impl.PlayerLookups;
+import net.md_5.bungee.api.event.PlayerDisconnectEvent;
+import net.md_5.bungee.api.event.PostLoginEvent;
 import net.md_5.bungee.api.event.PreLoginEvent;
 import net.md_5.bungee.api.plugin.Listener;
 import net.md_5.bungee.event.EventHandler;
@@ -34,11 +37,28 @@ import net.md_5.bungee.event.EventHandler;
  * @author Mark Vainomaa
  */
 public final class PlayerConnectionListener implements Listener {
+    private final PlayerLookups playerLookups;
+
+    PlayerConnectionListener(PlayerLookups playerLookups) {
+        this.playerLookups = playerLookups;
+    }
+
     @EventHandler
     public void on(PreLoginEvent event) {
         final String username = event.getConnection().getName();
-        GeoIPAPI.INSTANCE.getCountryByIPAsync(event.getConnection().getAddress().getAddress()).thenAccept((country) -> {
-            GeoIPAPIPlugin.getInstance().getSLF4JLogger().info("Player {} is connecting from {}", username, country);
+        playerLookups.prefetch(event.getConnection().getAddress()).thenAccept((result) -> {
+            CountryCode country = result.getCountry();
+            GeoIPAPIPlugin.getInstance().getSLF4JLogger().info("Player {} is connecting from {}", username, country != null ? country.getCode() : null);
         });
     }
+
+    @EventHandler
+    public void on(PostLoginEvent event) {
+        playerLookups.bind(event.getPlayer().getAddress(), event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler
+    public void on(PlayerDisconnectEvent event) {
+        playerLookups.remove(event.getPlayer().getUniqueId(), event.getPlayer().getAddress());
+    }
 }
@@ -7,6 +7,7 @@ dependencies {
         exclude(module = "httpclient")
     }
     implementation("org.apache.commons:commons-compress:${rootProject.extra["commonsCompressVersion"]}")
-    implementation("net.jodah:expiringmap:${rootProject.extra["expiringMapVersion"]}")
     implementation("com.pivovarit:throwing-function:${rootProject.extra["throwableFunctionVersion"]}")
+    testImplementation("junit:junit:${rootProject.extra["junitVersion"]}")
+    testImplementation(project(":fixtures"))
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.common;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Cross-process lock on a database directory, so that several server instances on the same host can share a
+ * single database. Lock is held on a byte range of {@link #LOCK_FILE_NAME}, with separate ranges for the
+ * long-lived update leadership and for the short initial database setup.
+ *
+ * @author Mark Vainomaa
+ */
+public final class DatabaseDirectoryLock implements AutoCloseable {
+    /* Lock file name in database directory */
+    public static final String LOCK_FILE_NAME = "database.lock";
+    /* Locked byte ranges */
+    private static final long LEADER_POSITION = 0;
+    private static final long SETUP_POSITION = 1;
+
+    private final Path lockFile;
+    private FileChannel channel;
+    private FileLock leaderLock;
+
+    public DatabaseDirectoryLock(@NonNull Path directory) {
+        this.lockFile = directory.resolve(LOCK_FILE_NAME);
+    }
+
+    /**
+     * Tries to become the instance which updates the database. Once acquired, leadership is held until
+     * {@link #close()}, or until the process exits
+     *
+     * @return Whether this instance is the leader
+     * @throws IOException When lock file can't be opened
+     */
+    public synchronized boolean tryAcquireLeadership() throws IOException {
+        if (leaderLock != null && leaderLock.isValid()) {
+            return true;
+        }
+
+        FileChannel channel = getChannel();
+        try {
+            leaderLock = channel.tryLock(LEADER_POSITION, 1, false);
+        } catch (OverlappingFileLockException e) {
+            // Held by another instance in this very JVM
+            leaderLock = null;
+        }
+        return leaderLock != null;
+    }
+
+    /**
+     * Locks database setup, blocking until other instances are done with theirs
+     *
+     * @return Lock to release once setup is done
+     * @throws IOException When locking fails
+     */
+    public FileLock lockSetup() throws IOException {
+        return getChannel().lock(SETUP_POSITION, 1, false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        leaderLock = null;
+        if (channel != null) {
+            // Releases all locks
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private synchronized FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        return channel;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.common;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Fetches database archive from a local directory, for example one shared over network file system or kept
+ * up to date by an external job. Directory is expected to contain {@code GeoLite2-Country.tar.gz}, and
+ * optionally its checksum in {@code GeoLite2-Country.tar.gz.md5}.
+ * <p>
+ * Archive is only read when its checksum, or without one its modification time and size have changed.
+ *
+ * @author Mark Vainomaa
+ */
+public final class DirectoryUpdateSource implements UpdateSource {
+    /* Database archive name in source directory */
+    public static final String ARCHIVE_FILE_NAME = "GeoLite2-Country.tar.gz";
+
+    private final Path directory;
+    private final boolean checkHash;
+    private String lastChecksum;
+    private long lastModified;
+    private long lastSize;
+
+    /**
+     * @param directory Directory containing database archive
+     * @param checkHash Whether archive checksum mismatch should fail the update
+     */
+    public DirectoryUpdateSource(@NonNull Path directory, boolean checkHash) {
+        this.directory = directory;
+        this.checkHash = checkHash;
+    }
+
+    @Nullable
+    @Override
+    public synchronized String fetch(@Nullable String currentChecksum, @NonNull Path target) throws IOException {
+        Path archiveFile = directory.resolve(ARCHIVE_FILE_NAME);
+        Path checksumFile = directory.resolve(ARCHIVE_FILE_NAME + ".md5");
+        String remoteChecksum = null;
+        if (Files.exists(checksumFile)) {
+            remoteChecksum = new String(Files.readAllBytes(checksumFile), StandardCharsets.UTF_8).trim();
+            if (remoteChecksum.equalsIgnoreCase(currentChecksum)) {
+                return null;
+            }
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(archiveFile, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        if (currentChecksum != null && currentChecksum.equalsIgnoreCase(lastChecksum)
+                && modified == lastModified && attributes.size() == lastSize) {
+            return null;
+        }
+
+        String checksum;
+        try (InputStream archive = Files.newInputStream(archiveFile)) {
+            checksum = GeoIPDownloader.extractDatabase(archive, target);
+        }
+        if (remoteChecksum != null) {
+            GeoIPDownloader.verifyChecksum(checksum, remoteChecksum, checkHash);
+        }
+
+        lastChecksum = checksum;
+        lastModified = modified;
+        lastSize = attributes.size();
+        if (checksum.equalsIgnoreCase(currentChecksum)) {
+            Files.deleteIfExists(target);
+            return null;
+        }
+        return checksum;
+    }
+
+    @Override
+    public String toString() {
+        return directory.toUri().toString();
+    }
+}
@@ -30,24 +30,17 @@ import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.ConnectException;
-import java.net.URL;
-import java.nio.channels.Channels;
-import java.nio.channels.FileChannel;
-import java.nio.channels.ReadableByteChannel;
+import java.io.OutputStream;
+import java.nio.channels.FileLock;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
-import java.util.stream.Collectors;
+import java.security.NoSuchAlgorithmException;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -55,56 +48,109 @@ import java.util.zip.GZIPInputStream;
  */
 public final class GeoIPDownloader {
     private static final Logger logger = LoggerFactory.getLogger(GeoIPDownloader.class);
-    private static final MessageDigest md5Digest;
+    private static final int BUFFER_SIZE = 8192;
 
-    /* The URL where Geo IP database will be downloaded */
-    private static final String DATABASE_URL = "https://download.maxmind.com/app/geoip_download?edition_id=GeoLite2-Country&license_key=@LICENSE_KEY@&suffix=tar.gz";
-    private static final String DATABASE_URL_MD5 = "https://download.maxmind.com/app/geoip_download?edition_id=GeoLite2-Country&license_key=@LICENSE_KEY@&suffix=tar.gz.md5";
     /* GeoIP database name on local filesystem */
     private static final String DATABASE_FILE_NAME = "geoip-country.db";
     /* Last downloaded archive md5sum */
     public static final String LAST_ARCHIVE_MD5 = "last-downloaded.md5";
     /* GeoIP database name in archive */
-    private static final String DATABASE_FILE_NAME_IN_ARCHIVE = "GeoLite2-Country.mmdb";
+    static final String DATABASE_FILE_NAME_IN_ARCHIVE = "GeoLite2-Country.mmdb";
 
     /**
      * Sets up database to specified directory
      *
-     * @param remoteHash Expected database archive md5 checksum,.
+     * @param source Source where database will be fetched from, if it does not exist yet
      * @param directory Directory where database should be in
-     * @param checkHash Whether checksum should be checked
      * @throws IOException When any I/O error happens
      */
-    public static Path setupDatabase(String remoteHash, Path directory, boolean checkHash, String licenseKey) throws IOException {
+    public static Path setupDatabase(UpdateSource source, Path directory) throws IOException {
         Files.createDirectories(directory);
 
         Path databaseFile = directory.resolve(DATABASE_FILE_NAME);
         Path databaseArchiveChecksumFile = directory.resolve(LAST_ARCHIVE_MD5);
         if (Files.exists(databaseFile))
             return databaseFile;
-        logger.trace("Database file {} does not exist, downloading from {}", databaseFile, DATABASE_URL);
+        logger.trace("Database file {} does not exist, downloading from {}", databaseFile, source);
+
+        // Directory might be shared with other instances, so only one of them should download
+        try (DatabaseDirectoryLock lock = new DatabaseDirectoryLock(directory)) {
+            FileLock setupLock = lock.lockSetup();
+            try {
+                if (Files.exists(databaseFile)) {
+                    logger.trace("Database file {} was set up by another instance", databaseFile);
+                    return databaseFile;
+                }
 
-        // Download md5 checksum if not set
-        if (remoteHash == null) {
-            remoteHash = getRemoteDatabaseMd5Hash(licenseKey);
+                Path downloadFile = directory.resolve(DATABASE_FILE_NAME + ".download");
+                String checksum;
+                try {
+                    checksum = source.fetch(null, downloadFile);
+                } catch (IOException e) {
+                    Files.deleteIfExists(downloadFile);
+                    throw e;
+                }
+                if (checksum == null)
+                    throw new IOException("Database is not available from " + source);
+
+                // Checksum goes first, as other instances treat database file existence as setup being done
+                Files.write(databaseArchiveChecksumFile, checksum.getBytes(StandardCharsets.UTF_8));
+                Files.move(downloadFile, databaseFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                setupLock.release();
+            }
         }
 
-        // Download database
-        byte[] databaseArchive;
-        try (InputStream download = new URL(DATABASE_URL.replace("@LICENSE_KEY@", licenseKey)).openStream()) {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            byte[] buf = new byte[8192];
-            for (int n; (n = download.read(buf)) > 0;) {
-                baos.write(buf, 0, n);
+        return databaseFile;
+    }
+
+    /**
+     * Extracts database from a tar.gz archive stream into given file. Archive is read only once and with a fixed
+     * size buffer, and gets fully consumed so its checksum covers every byte
+     *
+     * @param archive Database archive stream
+     * @param target File where database will be written to
+     * @return Archive md5 checksum
+     * @throws IOException When any I/O error happens, or archive does not contain the database
+     */
+    public static String extractDatabase(InputStream archive, Path target) throws IOException {
+        MessageDigest digest = newMd5Digest();
+        DigestInputStream digestStream = new DigestInputStream(archive, digest);
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        // Not closing tar stream here, as it would close the archive stream too before it's drained
+        TarArchiveInputStream tarStream = new TarArchiveInputStream(new GZIPInputStream(digestStream, BUFFER_SIZE));
+        TarArchiveEntry entry;
+        while ((entry = tarStream.getNextTarEntry()) != null) {
+            if (entry.isFile() && entry.getName().endsWith(DATABASE_FILE_NAME_IN_ARCHIVE))
+                break;
+        }
+
+        if (entry == null)
+            throw new IOException("Could not find " + DATABASE_FILE_NAME_IN_ARCHIVE + " from database archive");
+
+        try (OutputStream out = Files.newOutputStream(target)) {
+            for (int n; (n = tarStream.read(buffer)) != -1;) {
+                out.write(buffer, 0, n);
             }
-            databaseArchive = baos.toByteArray();
         }
 
-        // Calculate md5 hash of database file
-        byte[] localHashRaw = md5Digest.digest(databaseArchive);
-        String localHash = toHexString(localHashRaw);
+        // Rest of the archive is not needed, but still has to go through the digest
+        while (digestStream.read(buffer) != -1) {
+            // Nothing to do
+        }
+        return toHexString(digest.digest());
+    }
 
-        // Compare
+    /**
+     * Compares downloaded archive checksum with the one published by its source
+     *
+     * @param localHash Downloaded archive md5 checksum
+     * @param remoteHash Published archive md5 checksum
+     * @param checkHash Whether mismatch should fail, or just log a warning
+     * @throws IOException When checksums don't match and checkHash is set
+     */
+    static void verifyChecksum(String localHash, String remoteHash, boolean checkHash) throws IOException {
         // Note: apparently MaxMind's checksum is unreliable, http://web.archive.org/web/20190723150206/https:/twitter.com/_mikroskeem/status/1153673166834864130
         if (!localHash.equalsIgnoreCase(remoteHash)) {
             // Does not match
@@ -115,39 +161,6 @@ public final class GeoIPDownloader {
                 logger.warn(message);
             }
         }
-
-        // Download
-        try (TarArchiveInputStream tarStream = new TarArchiveInputStream(new GZIPInputStream(new ByteArrayInputStream(databaseArchive)))) {
-            TarArchiveEntry entry = null;
-            while ((entry = tarStream.getNextTarEntry()) != null) {
-                if (entry.isFile() && entry.getName().endsWith(DATABASE_FILE_NAME_IN_ARCHIVE))
-                    break;
-            }
-
-            if (entry == null)
-                throw new IOException("Could not find " + DATABASE_FILE_NAME_IN_ARCHIVE + " from " + DATABASE_URL);
-
-            try (ReadableByteChannel tarChannel = Channels.newChannel(tarStream)) {
-                try (FileChannel fileChannel = new FileOutputStream(databaseFile.toFile()).getChannel()) {
-                    fileChannel.transferFrom(tarChannel, 0, Long.MAX_VALUE);
-                }
-            }
-        } catch (ConnectException e) {
-            throw new IOException("Failed to connect to " + DATABASE_URL, e);
-        }
-
-        // Write database md5sum
-        Files.write(databaseArchiveChecksumFile, remoteHash.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
-
-        return databaseFile;
-    }
-
-    public static String getRemoteDatabaseMd5Hash(String licenseKey) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new URL(DATABASE_URL_MD5.replace("@LICENSE_KEY@", licenseKey)).openStream()))) {
-            return reader.lines().collect(Collectors.joining("\n")).trim();
-        } catch (ConnectException e) {
-            throw new IOException("Failed to connect to " + DATABASE_URL_MD5, e);
-        }
     }
 
     public static String getLocalDatabaseMd5Hash(Path databaseDirectory) throws IOException {
@@ -166,10 +179,10 @@ public final class GeoIPDownloader {
         return hexString.toString();
     }
 
-    static {
+    private static MessageDigest newMd5Digest() {
         try {
-            md5Digest = MessageDigest.getInstance("MD5");
-        } catch (Exception e) {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
             throw new AssertionError("Failed to get MD5 digest!", e);
         }
     }
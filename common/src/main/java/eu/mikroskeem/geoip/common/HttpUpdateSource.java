@@ -0,0 +1,248 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.common;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+/**
+ * Fetches database archive over HTTP.
+ * <p>
+ * Archive validators ({@code ETag} and {@code Last-Modified}) are remembered along with the archive checksum,
+ * so while installed database stays the same, checks are conditional requests costing a single header
+ * round-trip. Without usable validators the published checksum is compared first, like before.
+ *
+ * @author Mark Vainomaa
+ */
+public class HttpUpdateSource implements UpdateSource {
+    private static final Logger logger = LoggerFactory.getLogger(HttpUpdateSource.class);
+    /* File where archive validators are stored in */
+    public static final String STATE_FILE_NAME = "last-downloaded.http";
+    private static final int TIMEOUT_MILLIS = 30_000;
+
+    private final URL archiveUrl;
+    private final URL checksumUrl;
+    private final boolean checkHash;
+    private final Path stateFile;
+    private Validators validators;
+    private boolean validatorsLoaded = false;
+
+    /**
+     * @param archiveUrl Database archive URL
+     * @param checksumUrl Database archive md5 checksum URL, or null if source does not publish checksums
+     * @param checkHash Whether archive checksum mismatch should fail the update
+     * @param stateFile File where validators are persisted in, or null to keep them only in memory
+     */
+    public HttpUpdateSource(@NonNull URL archiveUrl, @Nullable URL checksumUrl, boolean checkHash, @Nullable Path stateFile) {
+        this.archiveUrl = archiveUrl;
+        this.checksumUrl = checksumUrl;
+        this.checkHash = checkHash;
+        this.stateFile = stateFile;
+    }
+
+    @Nullable
+    @Override
+    public synchronized String fetch(@Nullable String currentChecksum, @NonNull Path target) throws IOException {
+        Validators validators = loadValidators();
+        boolean conditional = currentChecksum != null && validators != null
+                && validators.checksum.equalsIgnoreCase(currentChecksum);
+
+        if (!conditional && currentChecksum != null && checksumUrl != null) {
+            String remoteChecksum = fetchChecksum();
+            if (currentChecksum.equalsIgnoreCase(remoteChecksum)) {
+                // Pick up validators with a header round-trip, so following checks can be conditional
+                HttpURLConnection connection = open(archiveUrl, "HEAD");
+                try {
+                    if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
+                        saveValidators(Validators.of(currentChecksum, connection));
+                    }
+                } finally {
+                    connection.disconnect();
+                }
+                return null;
+            }
+        }
+
+        HttpURLConnection connection = open(archiveUrl, "GET");
+        try {
+            if (conditional) {
+                if (validators.entityTag != null) {
+                    connection.setRequestProperty("If-None-Match", validators.entityTag);
+                }
+                if (validators.lastModified != null) {
+                    connection.setRequestProperty("If-Modified-Since", validators.lastModified);
+                }
+            }
+
+            int responseCode = connection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return null;
+            } else if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected response " + responseCode + " from " + this);
+            }
+
+            String checksum;
+            try (InputStream archive = connection.getInputStream()) {
+                checksum = GeoIPDownloader.extractDatabase(archive, target);
+            }
+            Validators fetched = Validators.of(checksum, connection);
+
+            if (checksum.equalsIgnoreCase(currentChecksum)) {
+                // Same archive as installed, source just couldn't tell it beforehand
+                Files.deleteIfExists(target);
+                saveValidators(fetched);
+                return null;
+            }
+
+            String remoteChecksum = checksumUrl != null ? fetchChecksum() : null;
+            if (remoteChecksum != null) {
+                GeoIPDownloader.verifyChecksum(checksum, remoteChecksum, checkHash);
+            }
+            saveValidators(fetched);
+            return checksum;
+        } catch (ConnectException e) {
+            throw new IOException("Failed to connect to " + this, e);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Nullable
+    private String fetchChecksum() throws IOException {
+        HttpURLConnection connection = open(checksumUrl, "GET");
+        try {
+            int responseCode = connection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+                logger.debug("{} does not publish archive checksums", this);
+                return null;
+            } else if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected response " + responseCode + " from " + this + " checksum");
+            }
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+                return reader.lines().collect(Collectors.joining("\n")).trim();
+            }
+        } catch (ConnectException e) {
+            throw new IOException("Failed to connect to " + this, e);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection open(URL url, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setUseCaches(false);
+        return connection;
+    }
+
+    @Nullable
+    private Validators loadValidators() {
+        if (validatorsLoaded || stateFile == null) {
+            return validators;
+        }
+
+        validatorsLoaded = true;
+        if (Files.notExists(stateFile)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(stateFile, StandardCharsets.UTF_8)) {
+            Properties properties = new Properties();
+            properties.load(reader);
+            String checksum = properties.getProperty("checksum");
+            if (checksum != null) {
+                validators = new Validators(checksum, properties.getProperty("etag"), properties.getProperty("last_modified"));
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read update source state from {}", stateFile, e);
+        }
+        return validators;
+    }
+
+    private void saveValidators(Validators validators) {
+        if (validators.entityTag == null && validators.lastModified == null) {
+            return;
+        }
+
+        this.validators = validators;
+        if (stateFile == null) {
+            return;
+        }
+        Properties properties = new Properties();
+        properties.setProperty("checksum", validators.checksum);
+        if (validators.entityTag != null) {
+            properties.setProperty("etag", validators.entityTag);
+        }
+        if (validators.lastModified != null) {
+            properties.setProperty("last_modified", validators.lastModified);
+        }
+        try (OutputStream out = Files.newOutputStream(stateFile)) {
+            properties.store(out, null);
+        } catch (IOException e) {
+            logger.warn("Failed to save update source state to {}", stateFile, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return archiveUrl.toString();
+    }
+
+    private static final class Validators {
+        private final String checksum;
+        private final String entityTag;
+        private final String lastModified;
+
+        Validators(String checksum, @Nullable String entityTag, @Nullable String lastModified) {
+            this.checksum = checksum;
+            this.entityTag = entityTag;
+            this.lastModified = lastModified;
+        }
+
+        static Validators of(String checksum, HttpURLConnection connection) {
+            return new Validators(checksum, connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.common;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.file.Path;
+
+/**
+ * Fetches GeoLite2-Country database from MaxMind
+ *
+ * @author Mark Vainomaa
+ */
+public final class MaxMindUpdateSource extends HttpUpdateSource {
+    /* The URL where Geo IP database will be downloaded */
+    private static final String DATABASE_URL = "https://download.maxmind.com/app/geoip_download?edition_id=GeoLite2-Country&license_key=@LICENSE_KEY@&suffix=tar.gz";
+    private static final String DATABASE_URL_MD5 = "https://download.maxmind.com/app/geoip_download?edition_id=GeoLite2-Country&license_key=@LICENSE_KEY@&suffix=tar.gz.md5";
+
+    /**
+     * @param licenseKey MaxMind license key
+     * @param checkHash Whether archive checksum mismatch should fail the update
+     * @param stateFile File where validators are persisted in, or null to keep them only in memory
+     */
+    public MaxMindUpdateSource(@NonNull String licenseKey, boolean checkHash, @Nullable Path stateFile) {
+        super(createUrl(DATABASE_URL, licenseKey), createUrl(DATABASE_URL_MD5, licenseKey), checkHash, stateFile);
+    }
+
+    @Override
+    public String toString() {
+        // Keeps license key out of logs
+        return DATABASE_URL;
+    }
+
+    private static URL createUrl(String url, String licenseKey) {
+        try {
+            return new URL(url.replace("@LICENSE_KEY@", URLEncoder.encode(licenseKey, "UTF-8")));
+        } catch (MalformedURLException | UnsupportedEncodingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.common;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Source where database updates are fetched from
+ *
+ * @author Mark Vainomaa
+ */
+public interface UpdateSource {
+    /**
+     * Fetches the database, unless source has the same one as currently installed
+     *
+     * @param currentChecksum Checksum of the currently installed database archive, or null if there is none
+     * @param target File where database will be written to
+     * @return Fetched database archive checksum, or null if there is no update. Target file is not left behind then
+     * @throws IOException When fetching fails. Target file may be partially written then
+     */
+    @Nullable
+    String fetch(@Nullable String currentChecksum, @NonNull Path target) throws IOException;
+
+    /**
+     * Creates update source from configuration value. Either {@code maxmind}, a {@code http(s)://} mirror URL
+     * pointing to the database archive, or a {@code file://} URL pointing to a directory containing it
+     *
+     * @param name Update source name or URL
+     * @param licenseKey MaxMind license key, needed only for {@code maxmind} source
+     * @param checkHash Whether archive checksum mismatch should fail the update
+     * @param databaseDirectory Directory where database is in, used for storing update source state
+     * @return Update source
+     * @throws IllegalArgumentException When update source is not valid
+     */
+    @NonNull
+    static UpdateSource fromName(@NonNull String name, @Nullable String licenseKey, boolean checkHash,
+                                 @NonNull Path databaseDirectory) {
+        Path stateFile = databaseDirectory.resolve(HttpUpdateSource.STATE_FILE_NAME);
+        if (name.equalsIgnoreCase("maxmind")) {
+            if (licenseKey == null || licenseKey.isEmpty()) {
+                throw new IllegalArgumentException("License key is not set, unable to download the database from MaxMind!");
+            }
+            return new MaxMindUpdateSource(licenseKey, checkHash, stateFile);
+        }
+
+        URI uri = URI.create(name);
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase() : "";
+        switch (scheme) {
+            case "file":
+                return new DirectoryUpdateSource(Paths.get(uri), checkHash);
+            case "http":
+            case "https":
+                try {
+                    return new HttpUpdateSource(uri.toURL(), new URL(name + ".md5"), checkHash, stateFile);
+                } catch (MalformedURLException e) {
+                    throw new IllegalArgumentException("Invalid update source URL: " + name, e);
+                }
+            default:
+                throw new IllegalArgumentException("Unsupported update source: " + name);
+        }
+    }
+}
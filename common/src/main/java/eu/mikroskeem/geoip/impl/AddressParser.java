@@ -0,0 +1,223 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+/**
+ * Parses IPv4 and IPv6 address literals without allocating. Hostnames are never resolved, anything
+ * that isn't a literal is simply rejected.
+ * <p>
+ * IPv4 addresses are accepted in dotted-quad form only. IPv6 addresses may use {@code ::} compression,
+ * an embedded IPv4 address in place of the last two groups, surrounding brackets and a zone id, which
+ * is ignored. Parsed address is available from {@link #getHigh()} and {@link #getLow()}, IPv4 addresses
+ * in IPv4-mapped form.
+ * <p>
+ * Instances hold parsing state and are not thread safe.
+ *
+ * @author Mark Vainomaa
+ */
+final class AddressParser {
+    private final int[] groups = new int[8];
+    private long high;
+    private long low;
+
+    long getHigh() {
+        return high;
+    }
+
+    long getLow() {
+        return low;
+    }
+
+    /**
+     * Parses given address literal
+     *
+     * @param literal Address literal
+     * @return Whether given string was a valid address literal
+     */
+    boolean parse(CharSequence literal) {
+        int start = 0;
+        int end = literal.length();
+        boolean bracketed = end >= 2 && literal.charAt(0) == '[' && literal.charAt(end - 1) == ']';
+        if (bracketed) {
+            start++;
+            end--;
+        }
+
+        for (int i = start; i < end; i++) {
+            if (literal.charAt(i) == ':') {
+                return parseIpv6(literal, start, end);
+            }
+        }
+
+        // Only IPv6 addresses may be bracketed
+        if (bracketed) {
+            return false;
+        }
+        long ipv4 = parseIpv4(literal, start, end);
+        if (ipv4 < 0) {
+            return false;
+        }
+        high = 0L;
+        low = Addresses.ipv4ToLow((int) ipv4);
+        return true;
+    }
+
+    private boolean parseIpv6(CharSequence literal, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (literal.charAt(i) == '%') {
+                end = i;
+                break;
+            }
+        }
+
+        int count = 0;
+        int compressedAt = -1;
+        int i = start;
+        if (end - i >= 2 && literal.charAt(i) == ':' && literal.charAt(i + 1) == ':') {
+            compressedAt = 0;
+            i += 2;
+        }
+
+        while (i < end) {
+            int tokenEnd = i;
+            boolean dotted = false;
+            while (tokenEnd < end && literal.charAt(tokenEnd) != ':') {
+                dotted |= literal.charAt(tokenEnd) == '.';
+                tokenEnd++;
+            }
+
+            if (dotted) {
+                // Embedded IPv4 address must be the last part, taking up two groups
+                long ipv4 = tokenEnd == end && count <= 6 ? parseIpv4(literal, i, tokenEnd) : -1;
+                if (ipv4 < 0) {
+                    return false;
+                }
+                groups[count++] = (int) (ipv4 >>> 16);
+                groups[count++] = (int) (ipv4 & 0xFFFF);
+                break;
+            }
+
+            int length = tokenEnd - i;
+            if (length == 0 || length > 4 || count == 8) {
+                return false;
+            }
+            int group = 0;
+            for (int j = i; j < tokenEnd; j++) {
+                int digit = hexDigit(literal.charAt(j));
+                if (digit < 0) {
+                    return false;
+                }
+                group = (group << 4) | digit;
+            }
+            groups[count++] = group;
+
+            i = tokenEnd;
+            if (i == end) {
+                break;
+            }
+
+            // Skip the separator, and note the compression if there's another one
+            if (++i < end && literal.charAt(i) == ':') {
+                if (compressedAt >= 0) {
+                    return false;
+                }
+                compressedAt = count;
+                i++;
+            } else if (i == end) {
+                return false;
+            }
+        }
+
+        if (compressedAt < 0 ? count != 8 : count > 7) {
+            return false;
+        }
+
+        // Move groups after the compression to the end, and zero the gap
+        if (compressedAt >= 0) {
+            int moved = count - compressedAt;
+            System.arraycopy(groups, compressedAt, groups, 8 - moved, moved);
+            for (int j = compressedAt; j < 8 - moved; j++) {
+                groups[j] = 0;
+            }
+        }
+
+        high = ((long) groups[0] << 48) | ((long) groups[1] << 32) | ((long) groups[2] << 16) | groups[3];
+        low = ((long) groups[4] << 48) | ((long) groups[5] << 32) | ((long) groups[6] << 16) | groups[7];
+        return true;
+    }
+
+    /**
+     * Gets value of an ASCII hex digit. Unlike {@link Character#digit(char, int)}, other Unicode digits are not accepted
+     *
+     * @return Digit value, or -1 if given character isn't a hex digit
+     */
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a dotted-quad IPv4 address
+     *
+     * @return Address as an unsigned integer, or -1 if given range isn't a valid address
+     */
+    private static long parseIpv4(CharSequence literal, int start, int end) {
+        long address = 0;
+        int octets = 0;
+        int i = start;
+        while (octets < 4) {
+            int octet = 0;
+            int digits = 0;
+            while (i < end && digits < 4) {
+                char c = literal.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                octet = octet * 10 + (c - '0');
+                digits++;
+                i++;
+            }
+            if (digits == 0 || digits > 3 || octet > 255) {
+                return -1;
+            }
+            address = (address << 8) | octet;
+
+            if (++octets < 4) {
+                if (i >= end || literal.charAt(i) != '.') {
+                    return -1;
+                }
+                i++;
+            }
+        }
+        return i == end ? address : -1;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Helpers for working with raw addresses. IPv4 addresses are represented as IPv4-mapped IPv6 addresses
+ * (::ffff:0:0/96), split into upper and lower 64 bits
+ *
+ * @author Mark Vainomaa
+ */
+final class Addresses {
+    static final long IPV4_MAPPED_PREFIX = 0x0000FFFF00000000L;
+
+    private Addresses() {}
+
+    static long ipv4ToLow(int ipv4) {
+        return IPV4_MAPPED_PREFIX | (ipv4 & 0xFFFFFFFFL);
+    }
+
+    static boolean isIpv4(long high, long low) {
+        return high == 0L && (low & 0xFFFFFFFF00000000L) == IPV4_MAPPED_PREFIX;
+    }
+
+    /**
+     * Masks upper 64 bits of an address to given prefix length
+     */
+    static long maskHigh(long high, int prefixLength) {
+        if (prefixLength >= 64) {
+            return high;
+        }
+        return prefixLength <= 0 ? 0L : high & (-1L << (64 - prefixLength));
+    }
+
+    /**
+     * Masks lower 64 bits of an address to given prefix length
+     */
+    static long maskLow(long low, int prefixLength) {
+        if (prefixLength <= 64) {
+            return 0L;
+        }
+        return prefixLength >= 128 ? low : low & (-1L << (128 - prefixLength));
+    }
+
+    static int compareUnsigned(long high, long low, long otherHigh, long otherLow) {
+        int result = Long.compareUnsigned(high, otherHigh);
+        return result != 0 ? result : Long.compareUnsigned(low, otherLow);
+    }
+
+    /**
+     * Sorts indexes into given address arrays by address, in ascending order
+     *
+     * @param indexes Indexes to sort
+     * @param count Number of indexes to sort, starting from the beginning of the array
+     * @param highs Upper 64 bits of addresses
+     * @param lows Lower 64 bits of addresses
+     */
+    static void sortIndexes(int[] indexes, int count, long[] highs, long[] lows) {
+        if (count < 2) {
+            return;
+        }
+        int[] buffer = new int[count];
+        mergeSort(indexes, buffer, 0, count, highs, lows);
+    }
+
+    private static void mergeSort(int[] indexes, int[] buffer, int from, int to, long[] highs, long[] lows) {
+        if (to - from < 2) {
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        mergeSort(indexes, buffer, from, middle, highs, lows);
+        mergeSort(indexes, buffer, middle, to, highs, lows);
+
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && compareUnsigned(highs[indexes[left]], lows[indexes[left]], highs[indexes[right]], lows[indexes[right]]) <= 0)) {
+                buffer[i] = indexes[left++];
+            } else {
+                buffer[i] = indexes[right++];
+            }
+        }
+        System.arraycopy(buffer, from, indexes, from, to - from);
+    }
+
+    static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xFFL);
+        }
+        return value;
+    }
+
+    static InetAddress toInetAddress(long high, long low) {
+        byte[] raw;
+        if (isIpv4(high, low)) {
+            raw = new byte[4];
+            writeBytes(raw, 0, low, 4);
+        } else {
+            raw = new byte[16];
+            writeBytes(raw, 0, high, 8);
+            writeBytes(raw, 8, low, 8);
+        }
+
+        try {
+            return InetAddress.getByAddress(raw);
+        } catch (UnknownHostException e) {
+            // Only thrown on illegal address length
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void writeBytes(byte[] target, int offset, long value, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            target[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
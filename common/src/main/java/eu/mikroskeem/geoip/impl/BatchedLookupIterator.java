@@ -0,0 +1,139 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import eu.mikroskeem.geoip.LookupResult;
+
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+
+/**
+ * Iterator resolving addresses from a source iterator in fixed size batches.
+ * <p>
+ * Source is consumed on the iterating thread only, and at most {@code maxInFlight} batches are being resolved
+ * or waiting to be consumed at any time, which bounds both memory usage and queued work. Batches are resolved
+ * on given executor, so with enough batches in flight all cores get used. Results follow the source order when
+ * ordered, otherwise batches are handed out as soon as they are resolved.
+ *
+ * @author Mark Vainomaa
+ */
+final class BatchedLookupIterator implements Iterator<LookupResult> {
+    private static final LookupResult[] EMPTY = new LookupResult[0];
+    private final Iterator<? extends InetAddress> source;
+    private final Function<InetAddress[], LookupResult[]> resolver;
+    private final Executor executor;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final boolean ordered;
+    private final ArrayDeque<CompletableFuture<LookupResult[]>> pending = new ArrayDeque<>();
+    private final BlockingQueue<CompletableFuture<LookupResult[]>> completed = new LinkedBlockingQueue<>();
+    private int inFlight = 0;
+    private LookupResult[] current = EMPTY;
+    private int position = 0;
+
+    BatchedLookupIterator(Iterator<? extends InetAddress> source, Function<InetAddress[], LookupResult[]> resolver,
+                          Executor executor, int batchSize, int maxInFlight, boolean ordered) {
+        this.source = source;
+        this.resolver = resolver;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.ordered = ordered;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (position == current.length) {
+            submitBatches();
+            if (inFlight == 0) {
+                return false;
+            }
+            current = takeBatch();
+            position = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public LookupResult next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        LookupResult result = current[position];
+        current[position++] = null;
+        return result;
+    }
+
+    private void submitBatches() {
+        while (inFlight < maxInFlight && source.hasNext()) {
+            InetAddress[] batch = new InetAddress[batchSize];
+            int size = 0;
+            while (size < batchSize && source.hasNext()) {
+                batch[size++] = source.next();
+            }
+            InetAddress[] addresses = size == batchSize ? batch : Arrays.copyOf(batch, size);
+
+            CompletableFuture<LookupResult[]> future = CompletableFuture.supplyAsync(() -> resolver.apply(addresses), executor);
+            if (ordered) {
+                pending.add(future);
+            } else {
+                future.whenComplete((results, e) -> completed.add(future));
+            }
+            inFlight++;
+        }
+    }
+
+    private LookupResult[] takeBatch() {
+        CompletableFuture<LookupResult[]> future;
+        if (ordered) {
+            future = pending.poll();
+        } else {
+            try {
+                future = completed.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for lookup results", e);
+            }
+        }
+        inFlight--;
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+        }
+    }
+}
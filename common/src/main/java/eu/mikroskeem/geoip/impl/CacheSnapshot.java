@@ -0,0 +1,152 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Persists hottest {@link LookupCache} entries across restarts.
+ * <p>
+ * Snapshot is tagged with the checksum of the database it was built from, and gets loaded only when it
+ * matches the current database, so results from an older database are never served.
+ *
+ * @author Mark Vainomaa
+ */
+final class CacheSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(CacheSnapshot.class);
+    private static final int MAGIC = 0x47495043; // "GIPC"
+    private static final int VERSION = 1;
+
+    private CacheSnapshot() {}
+
+    /**
+     * Writes up to {@code maxEntries} most recently accessed entries of given cache into a file
+     *
+     * @param cache Cache to write
+     * @param file Snapshot file
+     * @param databaseChecksum Checksum of the database cached results came from
+     * @param maxEntries Maximum amount of entries to write
+     * @return Amount of entries written
+     * @throws IOException When writing fails
+     */
+    static int write(LookupCache cache, Path file, String databaseChecksum, int maxEntries) throws IOException {
+        LookupCache.EntryList entries = new LookupCache.EntryList();
+        cache.forEach(entries);
+        int[] order = entries.hottestFirst();
+        int count = Math.min(order.length, maxEntries);
+
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(databaseChecksum);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                int index = order[i];
+                out.writeLong(entries.highs[index]);
+                out.writeLong(entries.lows[index]);
+                out.writeInt(entries.results[index]);
+            }
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * Loads entries from a snapshot file into given cache, if snapshot matches given database checksum.
+     * Snapshot is loaded either fully or not at all, invalid snapshots are ignored
+     *
+     * @param cache Cache to load entries into
+     * @param file Snapshot file
+     * @param databaseChecksum Checksum of the current database
+     * @return Amount of entries loaded
+     * @throws IOException When reading fails
+     */
+    static int read(LookupCache cache, Path file, String databaseChecksum) throws IOException {
+        if (Files.notExists(file)) {
+            return 0;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.debug("Ignoring cache snapshot {} with unknown format", file);
+                return 0;
+            }
+
+            String snapshotChecksum = in.readUTF();
+            if (!snapshotChecksum.equals(databaseChecksum)) {
+                logger.debug("Ignoring cache snapshot {} of another database ({} != {})", file, snapshotChecksum, databaseChecksum);
+                return 0;
+            }
+
+            int count = in.readInt();
+            if (count < 0 || count > cache.getCapacity()) {
+                logger.debug("Ignoring cache snapshot {} with invalid entry count {}", file, count);
+                return 0;
+            }
+
+            // Read everything before touching the cache, so a truncated or corrupt file leaves it empty
+            long[] highs = new long[count];
+            long[] lows = new long[count];
+            int[] results = new int[count];
+            for (int i = 0; i < count; i++) {
+                highs[i] = in.readLong();
+                lows[i] = in.readLong();
+                results[i] = in.readInt();
+                if (!isValid(results[i])) {
+                    logger.debug("Ignoring cache snapshot {} with invalid lookup result {}", file, results[i]);
+                    return 0;
+                }
+            }
+
+            int epoch = cache.getEpoch();
+            for (int i = 0; i < count; i++) {
+                cache.put(highs[i], lows[i], results[i], epoch);
+            }
+            return count;
+        } catch (EOFException e) {
+            logger.debug("Ignoring truncated cache snapshot {}", file);
+            return 0;
+        }
+    }
+
+    private static boolean isValid(int result) {
+        return result == PackedResult.pack(PackedResult.country(result), PackedResult.prefixLength(result))
+                && PackedResult.country(result) <= CountryIndex.NONE
+                && PackedResult.prefixLength(result) <= 128;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lookup engine which compiles the whole database into flat sorted arrays of address range starts on load.
+ * Lookups are a binary search over these arrays.
+ * <p>
+ * Range starts are stored with their sign bit flipped, so that signed comparison orders them as unsigned numbers.
+ * As adjacent networks with the same country get merged, reported prefix is the largest aligned network around
+ * the address which fits into its range.
+ *
+ * @author Mark Vainomaa
+ */
+final class CompiledLookupEngine implements LookupEngine {
+    private final int[] ipv4Starts;
+    private final char[] ipv4Countries;
+    private final long[] ipv6StartHighs;
+    private final long[] ipv6StartLows;
+    private final char[] ipv6Countries;
+
+    private CompiledLookupEngine(Ipv4RangeBuilder ipv4, Ipv6RangeBuilder ipv6) {
+        this.ipv4Starts = Arrays.copyOf(ipv4.starts, ipv4.size);
+        this.ipv4Countries = Arrays.copyOf(ipv4.countries, ipv4.size);
+        this.ipv6StartHighs = Arrays.copyOf(ipv6.highs, ipv6.size);
+        this.ipv6StartLows = Arrays.copyOf(ipv6.lows, ipv6.size);
+        this.ipv6Countries = Arrays.copyOf(ipv6.countries, ipv6.size);
+    }
+
+    static CompiledLookupEngine compile(Path databaseFile, DatabaseFileMode fileMode) throws IOException {
+        return new Compiler(MmdbReader.open(databaseFile, fileMode)).compile();
+    }
+
+    int getRangeCount() {
+        return ipv4Starts.length + ipv6StartHighs.length;
+    }
+
+    @Override
+    public int lookup(InetAddress address) {
+        if (address instanceof Inet4Address) {
+            // Inet4Address hash code is the address itself
+            return lookupIpv4(address.hashCode());
+        }
+        byte[] raw = address.getAddress();
+        return lookup(Addresses.readLong(raw, 0), Addresses.readLong(raw, 8));
+    }
+
+    @Override
+    public int lookup(long high, long low) {
+        if (Addresses.isIpv4(high, low)) {
+            return lookupIpv4((int) low);
+        }
+
+        long key = high ^ Long.MIN_VALUE;
+        long keyLow = low ^ Long.MIN_VALUE;
+        int from = 0;
+        int to = ipv6StartHighs.length - 1;
+        int found = -1;
+        while (from <= to) {
+            int middle = (from + to) >>> 1;
+            long middleHigh = ipv6StartHighs[middle];
+            if (middleHigh < key || (middleHigh == key && ipv6StartLows[middle] <= keyLow)) {
+                found = middle;
+                from = middle + 1;
+            } else {
+                to = middle - 1;
+            }
+        }
+        if (found < 0) {
+            return PackedResult.pack(CountryIndex.NONE, 0);
+        }
+
+        // Find the largest network around the address which fits into [start, end]
+        long startHigh = ipv6StartHighs[found] ^ Long.MIN_VALUE;
+        long startLow = ipv6StartLows[found] ^ Long.MIN_VALUE;
+        long endHigh = -1L;
+        long endLow = -1L;
+        if (found + 1 < ipv6StartHighs.length) {
+            endHigh = ipv6StartHighs[found + 1] ^ Long.MIN_VALUE;
+            endLow = ipv6StartLows[found + 1] ^ Long.MIN_VALUE;
+            if (endLow-- == 0) {
+                endHigh--;
+            }
+        }
+
+        int prefixLength = 0;
+        for (; prefixLength < 128; prefixLength++) {
+            long networkHigh = Addresses.maskHigh(high, prefixLength);
+            long networkLow = Addresses.maskLow(low, prefixLength);
+            long broadcastHigh = networkHigh | ~Addresses.maskHigh(-1L, prefixLength);
+            long broadcastLow = networkLow | ~Addresses.maskLow(-1L, prefixLength);
+            if (Addresses.compareUnsigned(networkHigh, networkLow, startHigh, startLow) >= 0
+                    && Addresses.compareUnsigned(broadcastHigh, broadcastLow, endHigh, endLow) <= 0) {
+                break;
+            }
+        }
+        return PackedResult.pack(ipv6Countries[found], prefixLength);
+    }
+
+    private int lookupIpv4(int address) {
+        if (ipv4Starts.length == 0) {
+            return PackedResult.pack(CountryIndex.NONE, 96);
+        }
+
+        int index = Arrays.binarySearch(ipv4Starts, address ^ Integer.MIN_VALUE);
+        if (index < 0) {
+            // Not an exact match, take the range before insertion point
+            index = -index - 2;
+        }
+
+        // Find the largest network around the address which fits into [start, end]
+        long unsignedAddress = address & 0xFFFFFFFFL;
+        long start = (ipv4Starts[index] ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+        long end = index + 1 < ipv4Starts.length ? ((ipv4Starts[index + 1] ^ Integer.MIN_VALUE) & 0xFFFFFFFFL) - 1 : 0xFFFFFFFFL;
+        int prefixLength = 0;
+        for (; prefixLength < 32; prefixLength++) {
+            long size = 1L << (32 - prefixLength);
+            long network = unsignedAddress & -size;
+            if (network >= start && network + size - 1 <= end) {
+                break;
+            }
+        }
+        return PackedResult.pack(ipv4Countries[index], prefixLength + 96);
+    }
+
+    @Override
+    public void close() {
+        // Nothing to close, arrays are garbage collected
+    }
+
+    /**
+     * Walks the search tree depth-first, left branch first, which yields ranges in ascending order.
+     * Adjacent ranges with the same country are merged.
+     */
+    private static final class Compiler {
+        private final MmdbReader reader;
+        private final int nodeCount;
+        private final Map<Integer, Integer> countryByRecord = new HashMap<>();
+        private final Ipv4RangeBuilder ipv4 = new Ipv4RangeBuilder();
+        private final Ipv6RangeBuilder ipv6 = new Ipv6RangeBuilder();
+
+        Compiler(MmdbReader reader) {
+            this.reader = reader;
+            this.nodeCount = reader.getNodeCount();
+        }
+
+        CompiledLookupEngine compile() {
+            int ipv4Start = reader.getIpv4Start();
+            if (ipv4Start < nodeCount) {
+                walkIpv4(ipv4Start, 0, 0);
+            } else {
+                // Whole IPv4 address space maps to a single record
+                ipv4.add(Integer.MIN_VALUE, countryOf(ipv4Start));
+            }
+
+            if (reader.getIpVersion() == 6) {
+                walkIpv6(0, 0, 0L, 0L);
+            }
+            return new CompiledLookupEngine(ipv4, ipv6);
+        }
+
+        private void walkIpv4(int node, int depth, int start) {
+            for (int bit = 0; bit < 2; bit++) {
+                int record = reader.readRecord(node, bit);
+                int childStart = bit == 0 ? start : start | (1 << (31 - depth));
+                if (record < nodeCount && depth < 31) {
+                    walkIpv4(record, depth + 1, childStart);
+                } else {
+                    ipv4.add(childStart ^ Integer.MIN_VALUE, countryOf(record));
+                }
+            }
+        }
+
+        private void walkIpv6(int node, int depth, long high, long low) {
+            for (int bit = 0; bit < 2; bit++) {
+                int record = reader.readRecord(node, bit);
+                long childHigh = high;
+                long childLow = low;
+                if (bit == 1) {
+                    if (depth < 64) {
+                        childHigh |= 1L << (63 - depth);
+                    } else {
+                        childLow |= 1L << (127 - depth);
+                    }
+                }
+
+                if (record < nodeCount && depth < 127) {
+                    walkIpv6(record, depth + 1, childHigh, childLow);
+                } else {
+                    ipv6.add(childHigh ^ Long.MIN_VALUE, childLow ^ Long.MIN_VALUE, countryOf(record));
+                }
+            }
+        }
+
+        private int countryOf(int record) {
+            if (record <= nodeCount) {
+                return CountryIndex.NONE;
+            }
+            return countryByRecord.computeIfAbsent(record, reader::readCountry);
+        }
+    }
+
+    private static final class Ipv4RangeBuilder {
+        private int[] starts = new int[1024];
+        private char[] countries = new char[1024];
+        private int size = 0;
+
+        void add(int start, int country) {
+            if (size > 0 && countries[size - 1] == country) {
+                return;
+            }
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                countries = Arrays.copyOf(countries, size * 2);
+            }
+            starts[size] = start;
+            countries[size] = (char) country;
+            size++;
+        }
+    }
+
+    private static final class Ipv6RangeBuilder {
+        private long[] highs = new long[1024];
+        private long[] lows = new long[1024];
+        private char[] countries = new char[1024];
+        private int size = 0;
+
+        void add(long high, long low, int country) {
+            if (size > 0 && countries[size - 1] == country) {
+                return;
+            }
+            if (size == highs.length) {
+                highs = Arrays.copyOf(highs, size * 2);
+                lows = Arrays.copyOf(lows, size * 2);
+                countries = Arrays.copyOf(countries, size * 2);
+            }
+            highs[size] = high;
+            lows[size] = low;
+            countries[size] = (char) country;
+            size++;
+        }
+    }
+}
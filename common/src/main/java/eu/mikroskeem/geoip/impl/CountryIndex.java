@@ -0,0 +1,69 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import eu.mikroskeem.geoip.CountryCode;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Maps two letter country ISO codes to compact indexes and back. Indexes are {@link CountryCode} ordinals,
+ * plus {@link #NONE} for addresses without a country
+ *
+ * @author Mark Vainomaa
+ */
+final class CountryIndex {
+    /* Index used for addresses without a country */
+    static final int NONE = CountryCode.COUNT;
+
+    private CountryIndex() {}
+
+    static int indexOf(@Nullable String isoCode) {
+        if (isoCode == null || isoCode.length() != 2) {
+            return NONE;
+        }
+        return indexOf(isoCode.charAt(0), isoCode.charAt(1));
+    }
+
+    static int indexOf(int firstLetter, int secondLetter) {
+        int first = firstLetter - 'A';
+        int second = secondLetter - 'A';
+        if (first < 0 || first >= 26 || second < 0 || second >= 26) {
+            return NONE;
+        }
+        return first * 26 + second;
+    }
+
+    @Nullable
+    static String codeOf(int index) {
+        CountryCode country = CountryCode.byOrdinal(index);
+        return country != null ? country.getCode() : null;
+    }
+
+    @Nullable
+    static CountryCode countryOf(int index) {
+        return CountryCode.byOrdinal(index);
+    }
+}
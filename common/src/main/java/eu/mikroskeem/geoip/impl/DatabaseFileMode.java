@@ -0,0 +1,58 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import java.util.Locale;
+
+/**
+ * Ways of accessing the database file
+ *
+ * @author Mark Vainomaa
+ */
+public enum DatabaseFileMode {
+    /**
+     * Database file is loaded fully into heap
+     */
+    MEMORY,
+
+    /**
+     * Database file is memory-mapped, and paged in by the operating system as needed
+     */
+    MEMORY_MAPPED,
+    ;
+
+    /**
+     * Gets database file mode by its configuration name
+     *
+     * @param name Mode name, case insensitive. {@code mmap} is accepted for {@link #MEMORY_MAPPED}
+     * @return Database file mode
+     * @throws IllegalArgumentException If mode with given name does not exist
+     */
+    public static DatabaseFileMode fromName(String name) {
+        String normalized = name.trim().toUpperCase(Locale.ROOT);
+        return normalized.equals("MMAP") ? MEMORY_MAPPED : valueOf(normalized);
+    }
+}
@@ -25,7 +25,10 @@
 
 package eu.mikroskeem.geoip.impl;
 
+import eu.mikroskeem.geoip.common.DatabaseDirectoryLock;
 import eu.mikroskeem.geoip.common.GeoIPDownloader;
+import eu.mikroskeem.geoip.common.UpdateSource;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,32 +38,55 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author Mark Vainomaa
  */
 public class DatabaseUpdaterTask implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(DatabaseUpdaterTask.class);
-    private final String licenseKey;
-    private final boolean checkHash;
-    private final long updateCheckInterval;
+    private final UpdateSource updateSource;
+    private final DatabaseDirectoryLock directoryLock;
     private final GeoIPAPIImpl apiImpl;
 
-    public DatabaseUpdaterTask(GeoIPAPIImpl apiImpl, String licenseKey, boolean checkHash, long interval, TimeUnit timeUnit) {
-        this.licenseKey = licenseKey;
-        this.checkHash = checkHash;
-        this.updateCheckInterval = timeUnit.toMillis(interval);
+    public DatabaseUpdaterTask(GeoIPAPIImpl apiImpl, UpdateSource updateSource, @Nullable DatabaseDirectoryLock directoryLock) {
+        this.updateSource = updateSource;
+        this.directoryLock = directoryLock;
         this.apiImpl = apiImpl;
     }
 
     @Override
     public void run() {
+        check();
+    }
+
+    /**
+     * Checks for database update, and applies it if there is one
+     *
+     * @return Check result
+     */
+    public UpdateCheckResult check() {
+        // With a shared database directory, only one instance does updates
+        if (directoryLock != null) {
+            try {
+                if (!directoryLock.tryAcquireLeadership()) {
+                    logger.debug("Another instance is responsible for updating the shared database");
+                    return UpdateCheckResult.SKIPPED;
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to check for database update: unable to lock shared database directory", e);
+                return UpdateCheckResult.FAILED;
+            }
+
+            // Previous leader might have updated the database before this instance noticed
+            apiImpl.reloadIfChanged();
+        }
+
         // Do update check
         logger.info("Checking for database update...");
 
         // Get local database hash
         Path databaseFile = this.apiImpl.getDatabaseFile();
+        Path tempDirectory;
         Path databaseUpdateFile;
         String localDatabaseHash;
         String remoteDatabaseHash;
@@ -69,36 +95,35 @@ public class DatabaseUpdaterTask implements Runnable {
             localDatabaseHash = GeoIPDownloader.getLocalDatabaseMd5Hash(databaseFile.getParent());
         } catch (IOException e) {
             logger.warn("Failed to check for database update: unable to get local database md5sum", e);
-            return;
+            return UpdateCheckResult.FAILED;
         }
 
-        // Get remote database hash
+        // Fetch update, if there is one
         try {
-            remoteDatabaseHash = GeoIPDownloader.getRemoteDatabaseMd5Hash(licenseKey);
+            tempDirectory = Files.createTempDirectory("geoipapi-dbupdate-");
+            databaseUpdateFile = tempDirectory.resolve(databaseFile.getFileName());
         } catch (IOException e) {
-            logger.warn("Failed to check for database update: unable to get remote database md5sum", e);
-            return;
+            logger.warn("Failed to check for database update: unable to create temporary directory", e);
+            return UpdateCheckResult.FAILED;
+        }
+        try {
+            remoteDatabaseHash = updateSource.fetch(localDatabaseHash, databaseUpdateFile);
+        } catch (IOException e) {
+            logger.warn("Failed to download update from {}!", updateSource, e);
+            deleteUpdate(tempDirectory, databaseUpdateFile);
+            return UpdateCheckResult.FAILED;
         }
 
-        if (localDatabaseHash != null && localDatabaseHash.equalsIgnoreCase(remoteDatabaseHash)) {
+        if (remoteDatabaseHash == null) {
             // No updates
             logger.info("No update available");
-            return;
-        }
-
-        // Update is available, download
-        logger.info("GeoIP database update is available, downloading...");
-        try {
-            Path tempDirectory = Files.createTempDirectory("geoipapi-dbupdate-");
-            databaseUpdateFile = GeoIPDownloader.setupDatabase(remoteDatabaseHash, tempDirectory, checkHash, licenseKey);
-            logger.info("Done! Updating database shortly...");
-        } catch (IOException e) {
-            logger.warn("Failed to download update!", e);
-            return;
+            deleteUpdate(tempDirectory, databaseUpdateFile);
+            return UpdateCheckResult.NO_UPDATE;
         }
+        logger.info("Downloaded GeoIP database update, updating database shortly...");
 
         // Do the actual update now
-        apiImpl.updateDatabase(updateInfo -> {
+        boolean updated = apiImpl.updateDatabase(updateInfo -> {
             Path updatePath = updateInfo.getUpdateFile();
             Path updateArchiveChecksumPath = updateInfo.getUpdateArchiveHashFile();
             Files.createDirectories(updatePath.getParent());
@@ -108,17 +133,16 @@ public class DatabaseUpdaterTask implements Runnable {
         });
 
         // Delete update
+        deleteUpdate(tempDirectory, databaseUpdateFile);
+        return updated ? UpdateCheckResult.UPDATED : UpdateCheckResult.FAILED;
+    }
+
+    private static void deleteUpdate(Path tempDirectory, Path databaseUpdateFile) {
         try {
             Files.deleteIfExists(databaseUpdateFile);
+            Files.deleteIfExists(tempDirectory);
         } catch (Exception e) {
             logger.warn("Failed to delete update file", e);
         }
-
-        // Pause
-        try {
-            Thread.sleep(this.updateCheckInterval);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
     }
 }
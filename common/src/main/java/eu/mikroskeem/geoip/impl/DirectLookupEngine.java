@@ -0,0 +1,91 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.file.Path;
+
+/**
+ * Lookup engine walking the database search tree directly with {@link MmdbReader}, and decoding nothing but
+ * the country ISO code of the matched record.
+ * <p>
+ * Unlike MaxMind's reader, this doesn't build a response model per lookup, and as decoded countries are cached
+ * by data record, lookups don't allocate. Reported prefix is the depth of the matched record in the tree.
+ *
+ * @author Mark Vainomaa
+ */
+final class DirectLookupEngine implements LookupEngine {
+    private final MmdbReader reader;
+    private final int nodeCount;
+
+    /**
+     * @param databaseFile Database file
+     * @param fileMode How database file is accessed
+     */
+    DirectLookupEngine(Path databaseFile, DatabaseFileMode fileMode) throws IOException {
+        this.reader = MmdbReader.open(databaseFile, fileMode);
+        this.nodeCount = reader.getNodeCount();
+    }
+
+    @Override
+    public int lookup(InetAddress address) {
+        if (address instanceof Inet4Address) {
+            // Inet4Address hash code is the address itself
+            return lookup(0L, Addresses.ipv4ToLow(address.hashCode()));
+        }
+        byte[] raw = address.getAddress();
+        return lookup(Addresses.readLong(raw, 0), Addresses.readLong(raw, 8));
+    }
+
+    @Override
+    public int lookup(long high, long low) {
+        int node;
+        int depth;
+        if (Addresses.isIpv4(high, low)) {
+            // IPv4 subtree is looked up with the last 32 bits only
+            node = reader.getIpv4Start();
+            depth = 96;
+        } else if (reader.getIpVersion() == 6) {
+            node = 0;
+            depth = 0;
+        } else {
+            return PackedResult.pack(CountryIndex.NONE, 0);
+        }
+
+        for (; node < nodeCount && depth < 128; depth++) {
+            int bit = depth < 64 ? (int) (high >>> (63 - depth)) & 1 : (int) (low >>> (127 - depth)) & 1;
+            node = reader.readRecord(node, bit);
+        }
+        return PackedResult.pack(reader.readCountry(node), depth);
+    }
+
+    @Override
+    public void close() {
+        // Nothing to close, mapped buffer is unmapped once garbage collected
+    }
+}
@@ -25,103 +25,344 @@
 
 package eu.mikroskeem.geoip.impl;
 
-import com.maxmind.geoip2.DatabaseReader;
-import com.maxmind.geoip2.exception.AddressNotFoundException;
-import com.maxmind.geoip2.exception.GeoIp2Exception;
 import com.pivovarit.function.ThrowingFunction;
+import eu.mikroskeem.geoip.CountryCode;
+import eu.mikroskeem.geoip.CountrySet;
 import eu.mikroskeem.geoip.GeoIPAPI;
+import eu.mikroskeem.geoip.LookupResult;
+import eu.mikroskeem.geoip.common.DatabaseDirectoryLock;
 import eu.mikroskeem.geoip.common.GeoIPDownloader;
-import net.jodah.expiringmap.ExpirationPolicy;
-import net.jodah.expiringmap.ExpiringMap;
+import eu.mikroskeem.geoip.common.HttpUpdateSource;
+import eu.mikroskeem.geoip.common.MaxMindUpdateSource;
+import eu.mikroskeem.geoip.common.UpdateSource;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.Optional;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * @author Mark Vainomaa
  */
 public class GeoIPAPIImpl implements GeoIPAPI {
     private static final Logger logger = LoggerFactory.getLogger(GeoIPAPIImpl.class);
-    private final ExecutorService executorService = new ForkJoinPool();
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private static final int STREAM_BATCH_SIZE = 1024;
+    private static final String CACHE_SNAPSHOT_FILE_NAME = "lookup-cache.bin";
+    private static final CompletableFuture<@Nullable String>[] completedFutures = createCompletedFutures(CountryIndex::codeOf);
+    private static final CompletableFuture<@Nullable CountryCode>[] completedCodeFutures = createCompletedFutures(CountryIndex::countryOf);
+    private final ForkJoinPool executorService = new ForkJoinPool();
     private final Path databaseFile;
     private final String licenseKey;
-    private final ExpiringMap<InetAddress, Optional<String>> cache;
+    private final GeoIPAPISettings settings;
+    private final LookupCache cache;
+    private final InFlightLookups inFlightLookups;
+    private final HostnameResolver hostnameResolver;
+    private final PlayerLookups playerLookups = new PlayerLookups(this);
+    private final LookupMetrics metrics;
     private final ScheduledExecutorService updaterTaskExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
         Thread thread = new Thread(r);
         thread.setName("GeoIPAPI database updater task");
         return thread;
     });
     private final AtomicBoolean updaterTaskScheduled = new AtomicBoolean(false);
-    private boolean initialized = false;
-    private DatabaseReader dbReader = null;
+    private final AtomicReference<ReaderSnapshot> readerSnapshot = new AtomicReference<>();
+    private final ThreadLocal<AddressParser> addressParser = ThreadLocal.withInitial(AddressParser::new);
+    private volatile String loadedChecksum = null;
+    private DatabaseDirectoryLock directoryLock = null;
+    private UpdateScheduler updateScheduler = null;
 
-    public GeoIPAPIImpl(Path databaseFile, String licenseKey, long expires, TimeUnit timeUnit) {
+    public GeoIPAPIImpl(Path databaseFile, String licenseKey, GeoIPAPISettings settings) {
         this.databaseFile = databaseFile;
         this.licenseKey = licenseKey;
-        this.cache = ExpiringMap.builder()
-                .expirationPolicy(ExpirationPolicy.ACCESSED)
-                .expiration(expires, timeUnit)
-                .entryLoader(this::loadCountry)
-                .build();
+        this.settings = settings;
+        this.cache = new LookupCache(settings.getCacheSize());
+        this.metrics = new LookupMetrics(cache, () -> executorService.getQueuedSubmissionCount() + executorService.getQueuedTaskCount());
+        this.inFlightLookups = new InFlightLookups(cache, metrics);
+        this.hostnameResolver = new HostnameResolver(settings);
+    }
+
+    /**
+     * @deprecated Lookup results don't expire by time anymore, use {@link #GeoIPAPIImpl(Path, String)}
+     */
+    @Deprecated
+    public GeoIPAPIImpl(Path databaseFile, String licenseKey, long expires, TimeUnit timeUnit) {
+        this(databaseFile, licenseKey);
     }
 
     public GeoIPAPIImpl(Path databaseFile, String licenseKey) {
-        this(databaseFile, licenseKey, 5, TimeUnit.MINUTES);
+        this(databaseFile, licenseKey, new GeoIPAPISettings());
+    }
+
+    private int lookupResult(InetAddress address) {
+        int result;
+        if (address instanceof Inet4Address) {
+            // Inet4Address hash code is the address itself, which saves us from copying address bytes
+            int ipv4 = address.hashCode();
+            if ((result = cache.get(ipv4)) == LookupCache.MISS) {
+                result = loadMissedResult(address, 0L, Addresses.ipv4ToLow(ipv4));
+            } else {
+                metrics.recordHit();
+            }
+        } else {
+            byte[] raw = address.getAddress();
+            long high = Addresses.readLong(raw, 0);
+            long low = Addresses.readLong(raw, 8);
+            if ((result = cache.get(high, low)) == LookupCache.MISS) {
+                result = loadMissedResult(address, high, low);
+            } else {
+                metrics.recordHit();
+            }
+        }
+        return result;
     }
 
-    private Optional<String> loadCountry(InetAddress address) {
-        if (!this.initialized) {
-            throw new IllegalStateException("API is not initialized!");
+    private int lookupResult(long high, long low) {
+        int result;
+        if ((result = cache.get(high, low)) == LookupCache.MISS) {
+            result = loadMissedResult(null, high, low);
+        } else {
+            metrics.recordHit();
         }
+        return result;
+    }
 
+    private int loadMissedResult(@Nullable InetAddress address, long high, long low) {
+        // Only misses are timed, timing cache hits would cost a noticeable share of the hit itself
+        metrics.recordMiss();
+        long started = System.nanoTime();
         try {
-            lock.readLock().lock();
-            return Optional.ofNullable(dbReader.country(address).getCountry().getIsoCode());
-        } catch (AddressNotFoundException e) {
-            return Optional.empty();
-        } catch (IOException | GeoIp2Exception e) {
+            return loadResult(address, high, low);
+        } finally {
+            metrics.recordLookup(System.nanoTime() - started);
+        }
+    }
+
+    private int lookupCountry(InetAddress address) {
+        return PackedResult.country(lookupResult(address));
+    }
+
+    private int getCachedResult(InetAddress address) {
+        int result;
+        if (address instanceof Inet4Address) {
+            result = cache.get(address.hashCode());
+        } else {
+            byte[] raw = address.getAddress();
+            result = cache.get(Addresses.readLong(raw, 0), Addresses.readLong(raw, 8));
+        }
+
+        // Misses get counted once the lookup itself runs
+        if (result != LookupCache.MISS) {
+            metrics.recordHit();
+        }
+        return result;
+    }
+
+    private int getCachedResult(long high, long low) {
+        int result = cache.get(high, low);
+        if (result != LookupCache.MISS) {
+            metrics.recordHit();
+        }
+        return result;
+    }
+
+    private int getCachedCountry(InetAddress address) {
+        int result = getCachedResult(address);
+        return result != LookupCache.MISS ? PackedResult.country(result) : LookupCache.MISS;
+    }
+
+    private int loadResult(@Nullable InetAddress address, long high, long low) {
+        // Concurrent misses of the same block share one database read
+        return inFlightLookups.load(high, low, () -> readAndCacheResult(address, high, low));
+    }
+
+    private int readAndCacheResult(@Nullable InetAddress address, long high, long low) {
+        ReaderSnapshot snapshot = acquireSnapshot();
+        try {
+            LookupEngine engine = snapshot.getEngine();
+            int result = address != null ? readResult(engine, address) : readResult(engine, high, low);
+            cache.put(high, low, result, snapshot.getEpoch());
+            return result;
+        } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
-            lock.readLock().unlock();
+            snapshot.release();
         }
     }
 
-    private DatabaseReader initializeReader() {
-        logger.debug("Initializing database reader");
+    private int readResult(LookupEngine engine, InetAddress address) throws IOException {
+        long started = System.nanoTime();
         try {
-            return new DatabaseReader.Builder(databaseFile.toFile()).build();
+            return countResult(engine.lookup(address));
+        } catch (IOException | RuntimeException e) {
+            metrics.recordError();
+            throw e;
+        } finally {
+            metrics.recordRead(System.nanoTime() - started);
+        }
+    }
+
+    private int readResult(LookupEngine engine, long high, long low) throws IOException {
+        long started = System.nanoTime();
+        try {
+            return countResult(engine.lookup(high, low));
+        } catch (IOException | RuntimeException e) {
+            metrics.recordError();
+            throw e;
+        } finally {
+            metrics.recordRead(System.nanoTime() - started);
+        }
+    }
+
+    private int countResult(int result) {
+        if (PackedResult.country(result) == CountryIndex.NONE) {
+            metrics.recordNotFound();
+        }
+        return result;
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        long started = System.nanoTime();
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(supplier, executorService);
+        future.whenComplete((result, e) -> metrics.recordAsync(System.nanoTime() - started));
+        return future;
+    }
+
+    private ReaderSnapshot acquireSnapshot() {
+        for (;;) {
+            ReaderSnapshot snapshot = this.readerSnapshot.get();
+            if (snapshot == null) {
+                throw new IllegalStateException("API is not initialized!");
+            }
+
+            // Retaining fails only if snapshot got retired in between, then just retry with the new one
+            if (snapshot.retain()) {
+                return snapshot;
+            }
+        }
+    }
+
+    private LookupEngine initializeEngine() {
+        LookupEngineType engineType = settings.getLookupEngine();
+        DatabaseFileMode fileMode = settings.getDatabaseFileMode();
+        logger.debug("Initializing {} database lookup engine", engineType);
+        LookupEngine engine;
+        long started = System.nanoTime();
+        try {
+            switch (engineType) {
+                case COMPILED:
+                    CompiledLookupEngine compiled = CompiledLookupEngine.compile(databaseFile, fileMode);
+                    logger.info("Compiled GeoIP database into {} address ranges in {}ms", compiled.getRangeCount(),
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+                    engine = compiled;
+                    break;
+                case DIRECT:
+                    engine = new DirectLookupEngine(databaseFile, fileMode);
+                    logger.info("Loaded GeoIP database in {}ms (file mode: {})",
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), fileMode);
+                    break;
+                case MAXMIND:
+                default:
+                    engine = new MaxMindLookupEngine(databaseFile, fileMode, settings.getNodeCacheSize());
+                    logger.info("Loaded GeoIP database in {}ms (file mode: {}, node cache size: {})",
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), fileMode, settings.getNodeCacheSize());
+                    break;
+            }
         } catch (IOException e) {
             throw new RuntimeException("Failed to initialize GeoIP database reader", e);
         }
+        return engine;
     }
 
     public void initializeDatabase() {
-        if (this.initialized) {
+        if (this.readerSnapshot.get() != null) {
             return;
         }
 
-        this.dbReader = initializeReader();
-        this.initialized = true;
+        String checksum = readDatabaseChecksum();
+        ReaderSnapshot snapshot = new ReaderSnapshot(initializeEngine(), cache.getEpoch());
+        if (!this.readerSnapshot.compareAndSet(null, snapshot)) {
+            snapshot.release();
+            return;
+        }
+        this.loadedChecksum = checksum;
+        loadCacheSnapshot();
+        metrics.register();
+    }
+
+    private void loadCacheSnapshot() {
+        try {
+            String checksum = this.loadedChecksum;
+            if (checksum == null) {
+                return;
+            }
+            int loaded = CacheSnapshot.read(cache, getCacheSnapshotFile(), checksum);
+            if (loaded > 0) {
+                logger.info("Loaded {} cached lookup results from previous run", loaded);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to load lookup cache snapshot", e);
+        }
+    }
+
+    private void saveCacheSnapshot() {
+        try {
+            String checksum = this.loadedChecksum;
+            if (checksum == null) {
+                return;
+            }
+            int saved = CacheSnapshot.write(cache, getCacheSnapshotFile(), checksum, cache.getCapacity() / 2);
+            logger.debug("Saved {} cached lookup results", saved);
+        } catch (Exception e) {
+            logger.warn("Failed to save lookup cache snapshot", e);
+        }
+    }
+
+    private Path getCacheSnapshotFile() {
+        Path instanceDirectory = settings.getInstanceDirectory();
+        return (instanceDirectory != null ? instanceDirectory : databaseFile.getParent()).resolve(CACHE_SNAPSHOT_FILE_NAME);
+    }
+
+    @Nullable
+    private String readDatabaseChecksum() {
+        try {
+            String checksum = GeoIPDownloader.getLocalDatabaseMd5Hash(databaseFile.getParent());
+            return checksum != null ? checksum.trim() : null;
+        } catch (IOException e) {
+            logger.warn("Failed to read database archive checksum", e);
+            return null;
+        }
     }
 
     public void setupUpdater(boolean checkHash, long interval, TimeUnit timeUnit) {
+        Path stateFile = databaseFile.getParent().resolve(HttpUpdateSource.STATE_FILE_NAME);
+        setupUpdater(new MaxMindUpdateSource(licenseKey, checkHash, stateFile), interval, timeUnit);
+    }
+
+    public void setupUpdater(UpdateSource updateSource, long interval, TimeUnit timeUnit) {
         synchronized (this.updaterTaskScheduled) {
             if (this.updaterTaskScheduled.get()) {
                 return;
@@ -129,120 +370,401 @@ public class GeoIPAPIImpl implements GeoIPAPI {
             this.updaterTaskScheduled.set(true);
         }
 
-        DatabaseUpdaterTask task = new DatabaseUpdaterTask(this, licenseKey, checkHash, interval, timeUnit);
-        this.updaterTaskExecutor.scheduleAtFixedRate(task, 0, interval, timeUnit);
+        if (settings.isSharedDatabase()) {
+            this.directoryLock = new DatabaseDirectoryLock(databaseFile.getParent());
+            long pollInterval = settings.getSharedDatabasePollInterval();
+            this.updaterTaskExecutor.scheduleWithFixedDelay(this::reloadIfChanged, pollInterval, pollInterval,
+                    settings.getSharedDatabasePollIntervalUnit());
+        }
+        DatabaseUpdaterTask task = new DatabaseUpdaterTask(this, updateSource, directoryLock);
+        this.updateScheduler = new UpdateScheduler(updaterTaskExecutor, task, interval, timeUnit, settings);
+        this.updateScheduler.start();
     }
 
-    public void updateDatabase(ThrowingFunction<UpdateInfo, Boolean, Exception> databaseUpdater) {
-        DatabaseReader oldReader = this.dbReader;
-        boolean locked = false;
-        boolean updated = false;
-        try {
-            Path updateFile = databaseFile.getParent().resolve("update.db");
-            Path updateArchiveFileMd5 = databaseFile.getParent().resolve("update-archive.md5");
+    /**
+     * Checks for database update right away, instead of waiting for the next scheduled check
+     *
+     * @return Future completing with check result
+     */
+    public CompletableFuture<UpdateCheckResult> checkForUpdates() {
+        UpdateScheduler scheduler = this.updateScheduler;
+        if (scheduler == null) {
+            CompletableFuture<UpdateCheckResult> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("Database updater is not set up"));
+            return future;
+        }
+        return scheduler.checkNow();
+    }
 
-            try {
-                // Run update function
-                boolean success = databaseUpdater.apply(new UpdateInfo(updateFile, updateArchiveFileMd5));
-                if (!success) {
-                    return;
-                }
+    /**
+     * Reloads database if another instance sharing the database directory has updated it
+     */
+    void reloadIfChanged() {
+        String checksum = readDatabaseChecksum();
+        if (checksum == null || checksum.equals(this.loadedChecksum) || this.readerSnapshot.get() == null) {
+            return;
+        }
 
-                if (Files.notExists(updateFile) || Files.notExists(updateArchiveFileMd5)) {
-                    throw new IllegalStateException("Database update file or checksum does not exist!");
-                }
-            } catch (Exception e) {
-                // Update failed
-                logger.warn("Database update failed", e);
-                try {
-                    Files.deleteIfExists(updateFile);
-                } catch (Exception ignored) {}
-                return;
-            }
+        logger.info("Database was updated by another instance, reloading");
+        replaceEngine(checksum, System.nanoTime());
+    }
 
-            // Close database reader, update file and reinitialize reader
-            logger.debug("Locking database access for update...");
-            lock.writeLock().lock();
-            locked = true;
-            try {
-                Files.move(updateFile, databaseFile, StandardCopyOption.REPLACE_EXISTING);
-            } catch (IOException e) {
-                logger.warn("Failed to replace {} with {}", this.databaseFile, updateFile, e);
-                return;
-            }
+    /**
+     * Replaces database with an update
+     *
+     * @param databaseUpdater Function writing update into given files. Returns whether there was an update
+     * @return Whether database was replaced
+     */
+    public boolean updateDatabase(ThrowingFunction<UpdateInfo, Boolean, Exception> databaseUpdater) {
+        Path updateFile = databaseFile.getParent().resolve("update.db");
+        Path updateArchiveFileMd5 = databaseFile.getParent().resolve("update-archive.md5");
+        long started = System.nanoTime();
 
-            Path lastDownloadedArchiveMd5 = databaseFile.getParent().resolve(GeoIPDownloader.LAST_ARCHIVE_MD5);
-            try {
-                Files.move(updateArchiveFileMd5, lastDownloadedArchiveMd5, StandardCopyOption.REPLACE_EXISTING);
-            } catch (IOException e) {
-                logger.warn("Failed to copy last downloaded database archive checksum from {} to {}", lastDownloadedArchiveMd5, updateArchiveFileMd5, e);
+        try {
+            // Run update function
+            boolean success = databaseUpdater.apply(new UpdateInfo(updateFile, updateArchiveFileMd5));
+            if (!success) {
+                return false;
             }
 
-            // Move succeeded, replace reader and clear cache
-            try {
-                this.dbReader = initializeReader();
-            } catch (Exception e) {
-                this.dbReader = oldReader;
-                logger.error("Failed to replace GeoIP database reader, using old reader", e);
-                return;
+            if (Files.notExists(updateFile) || Files.notExists(updateArchiveFileMd5)) {
+                throw new IllegalStateException("Database update file or checksum does not exist!");
             }
+        } catch (Exception e) {
+            // Update failed
+            logger.warn("Database update failed", e);
+            try {
+                Files.deleteIfExists(updateFile);
+            } catch (Exception ignored) {}
+            return false;
+        }
+
+        // Replace database file. Readers already mapping the old file keep using it until they're closed
+        try {
+            Files.move(updateFile, databaseFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Failed to replace {} with {}", this.databaseFile, updateFile, e);
+            return false;
+        }
 
-            // Clear cache and mark update done
-            this.cache.clear();
-            updated = true;
+        Path lastDownloadedArchiveMd5 = databaseFile.getParent().resolve(GeoIPDownloader.LAST_ARCHIVE_MD5);
+        try {
+            Files.move(updateArchiveFileMd5, lastDownloadedArchiveMd5, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Failed to copy last downloaded database archive checksum from {} to {}", lastDownloadedArchiveMd5, updateArchiveFileMd5, e);
+        }
+
+        // Move succeeded, set up new reader
+        if (!replaceEngine(readDatabaseChecksum(), started)) {
+            return false;
+        }
+        logger.info("Database updated successfully");
+        return true;
+    }
+
+    private synchronized boolean replaceEngine(@Nullable String checksum, long started) {
+        ReaderSnapshot newSnapshot;
+        try {
+            newSnapshot = new ReaderSnapshot(initializeEngine(), cache.getEpoch() + 1);
+        } catch (Exception e) {
+            logger.error("Failed to replace GeoIP database reader, using old reader", e);
+            return false;
+        }
+
+        // Publish new reader and move cache onto its epoch. Cached results of the old reader keep being served
+        // until revalidated, and old reader gets closed once last in-flight lookup releases it
+        ReaderSnapshot oldSnapshot = this.readerSnapshot.getAndSet(newSnapshot);
+        this.loadedChecksum = checksum;
+        this.cache.setEpoch(newSnapshot.getEpoch());
+        metrics.recordUpdate(System.nanoTime() - started);
+        if (oldSnapshot != null) {
+            oldSnapshot.release();
+        }
+
+        try {
+            updaterTaskExecutor.execute(() -> revalidateCache(newSnapshot));
+        } catch (RejectedExecutionException e) {
+            // Shutting down, nothing left to serve
+        }
+        return true;
+    }
+
+    /**
+     * Re-resolves cached results of older databases against given snapshot, hottest entries first
+     */
+    private void revalidateCache(ReaderSnapshot snapshot) {
+        // Retaining fails when snapshot got already replaced, then its successor revalidates the cache
+        if (!snapshot.retain()) {
+            return;
+        }
+
+        long started = System.nanoTime();
+        try {
+            int revalidated = cache.revalidate(snapshot.getEpoch(), snapshot.getEngine()::lookup);
+            logger.debug("Revalidated {} cached lookup results in {}ms", revalidated,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (Exception e) {
+            logger.warn("Failed to revalidate cached lookup results, clearing cache", e);
+            cache.clear();
         } finally {
-            if (locked) {
-                logger.debug("Unlocking database after update");
-                lock.writeLock().unlock();
-            }
-            if (updated) {
-                executorService.submit(() -> {
-                    try {
-                        oldReader.close();
-                    } catch (Exception e) {
-                        logger.warn("Failed to close old database reader", e);
-                    }
-                });
-                logger.info("Database updated successfully");
-            }
+            snapshot.release();
         }
     }
 
     @Nullable
     @Override
     public String getCountryByIP(@NonNull InetAddress ipAddress) {
-        try {
-            return getCountryByIPAsync(ipAddress).get();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        // Both cache lookup and possible database lookup happen on the calling thread
+        return CountryIndex.codeOf(lookupCountry(ipAddress));
     }
 
     @Nullable
     @Override
     public String getCountryByIP(@NonNull String ipAddress) {
-        try {
-            return getCountryByIPAsync(ipAddress).get();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        AddressParser parser = addressParser.get();
+        if (parser.parse(ipAddress)) {
+            return CountryIndex.codeOf(PackedResult.country(lookupResult(parser.getHigh(), parser.getLow())));
         }
+        return getCountryByIP(getInetAddressByName(ipAddress));
     }
 
     @NonNull
     @Override
     public CompletableFuture<@Nullable String> getCountryByIPAsync(@NonNull InetAddress ipAddress) {
-        return CompletableFuture.supplyAsync(() -> cache.get(ipAddress).orElse(null), executorService);
+        // Answer cache hits right away, only misses need to go through the thread pool
+        int country = getCachedCountry(ipAddress);
+        if (country != LookupCache.MISS) {
+            return completedFutures[country];
+        }
+        return supplyAsync(() -> CountryIndex.codeOf(lookupCountry(ipAddress)));
+    }
+
+    @Nullable
+    @Override
+    public CountryCode getCountryCodeByIP(@NonNull InetAddress ipAddress) {
+        return CountryIndex.countryOf(lookupCountry(ipAddress));
+    }
+
+    @Nullable
+    @Override
+    public CountryCode getCountryCodeByIP(int ipv4Address) {
+        return CountryIndex.countryOf(PackedResult.country(lookupResult(0L, Addresses.ipv4ToLow(ipv4Address))));
+    }
+
+    @Nullable
+    @Override
+    public CountryCode getCountryCodeByIP(long high, long low) {
+        return CountryIndex.countryOf(PackedResult.country(lookupResult(high, low)));
+    }
+
+    @Nullable
+    @Override
+    public CountryCode getCountryCodeByIP(byte @NonNull [] address, int offset, int length) {
+        if (length == 4) {
+            int ipv4 = (address[offset] & 0xFF) << 24 | (address[offset + 1] & 0xFF) << 16
+                    | (address[offset + 2] & 0xFF) << 8 | (address[offset + 3] & 0xFF);
+            return getCountryCodeByIP(ipv4);
+        } else if (length == 16) {
+            return getCountryCodeByIP(Addresses.readLong(address, offset), Addresses.readLong(address, offset + 8));
+        }
+        throw new IllegalArgumentException("Invalid address length: " + length);
+    }
+
+    @Nullable
+    @Override
+    public CountryCode getCountryCodeByIP(@NonNull CharSequence ipAddress) {
+        AddressParser parser = addressParser.get();
+        if (!parser.parse(ipAddress)) {
+            throw new IllegalArgumentException("Not an IP address literal: " + ipAddress);
+        }
+        return getCountryCodeByIP(parser.getHigh(), parser.getLow());
+    }
+
+    @NonNull
+    @Override
+    public CompletableFuture<@Nullable CountryCode> getCountryCodeByIPAsync(@NonNull InetAddress ipAddress) {
+        int country = getCachedCountry(ipAddress);
+        if (country != LookupCache.MISS) {
+            return completedCodeFutures[country];
+        }
+        return supplyAsync(() -> CountryIndex.countryOf(lookupCountry(ipAddress)));
+    }
+
+    @NonNull
+    @Override
+    public LookupResult lookup(@NonNull InetAddress ipAddress) {
+        return toLookupResult(ipAddress, lookupResult(ipAddress));
+    }
+
+    @NonNull
+    @Override
+    public CompletableFuture<@NonNull LookupResult> lookupAsync(@NonNull InetAddress ipAddress) {
+        int result = getCachedResult(ipAddress);
+        if (result != LookupCache.MISS) {
+            return CompletableFuture.completedFuture(toLookupResult(ipAddress, result));
+        }
+        return supplyAsync(() -> lookup(ipAddress));
+    }
+
+    @Override
+    public @Nullable CountryCode @NonNull [] getCountriesByIP(@NonNull Collection<? extends @NonNull InetAddress> ipAddresses) {
+        return lookupCountries(ipAddresses.toArray(new InetAddress[0]));
+    }
+
+    @NonNull
+    @Override
+    public CompletableFuture<@Nullable CountryCode @NonNull []> getCountriesByIPAsync(@NonNull Collection<? extends @NonNull InetAddress> ipAddresses) {
+        InetAddress[] addresses = ipAddresses.toArray(new InetAddress[0]);
+        return supplyAsync(() -> lookupCountries(addresses));
+    }
+
+    private @Nullable CountryCode @NonNull [] lookupCountries(InetAddress[] addresses) {
+        int[] results = lookupResults(addresses);
+        CountryCode[] countries = new CountryCode[addresses.length];
+        for (int i = 0; i < results.length; i++) {
+            countries[i] = CountryIndex.countryOf(PackedResult.country(results[i]));
+        }
+        return countries;
+    }
+
+    @NonNull
+    @Override
+    public Stream<@NonNull LookupResult> lookupStream(@NonNull Iterator<? extends @NonNull InetAddress> ipAddresses, boolean ordered) {
+        int maxInFlight = Runtime.getRuntime().availableProcessors() * 2;
+        Iterator<LookupResult> results = new BatchedLookupIterator(ipAddresses, this::lookupBatch, executorService,
+                STREAM_BATCH_SIZE, maxInFlight, ordered);
+        int characteristics = Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results, characteristics), false);
+    }
+
+    private LookupResult[] lookupBatch(InetAddress[] addresses) {
+        int[] results = lookupResults(addresses);
+        LookupResult[] lookupResults = new LookupResult[addresses.length];
+        for (int i = 0; i < results.length; i++) {
+            lookupResults[i] = toLookupResult(addresses[i], results[i]);
+        }
+        return lookupResults;
+    }
+
+    /**
+     * Looks up multiple addresses at once. Cache misses are resolved in ascending address order under
+     * a single database snapshot, so that neighbouring lookups hit the same parts of the database and
+     * freshly cached networks answer following addresses.
+     */
+    private int[] lookupResults(InetAddress[] addresses) {
+        int count = addresses.length;
+        long[] highs = new long[count];
+        long[] lows = new long[count];
+        int[] results = new int[count];
+        int[] misses = new int[count];
+        int missCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            InetAddress address = addresses[i];
+            if (address instanceof Inet4Address) {
+                lows[i] = Addresses.ipv4ToLow(address.hashCode());
+            } else {
+                byte[] raw = address.getAddress();
+                highs[i] = Addresses.readLong(raw, 0);
+                lows[i] = Addresses.readLong(raw, 8);
+            }
+            if ((results[i] = cache.get(highs[i], lows[i])) == LookupCache.MISS) {
+                misses[missCount++] = i;
+            } else {
+                metrics.recordHit();
+            }
+        }
+
+        if (missCount == 0) {
+            return results;
+        }
+
+        Addresses.sortIndexes(misses, missCount, highs, lows);
+        ReaderSnapshot snapshot = acquireSnapshot();
+        try {
+            LookupEngine engine = snapshot.getEngine();
+            for (int i = 0; i < missCount; i++) {
+                int index = misses[i];
+                int result = cache.get(highs[index], lows[index]);
+                if (result == LookupCache.MISS) {
+                    metrics.recordMiss();
+                    result = readResult(engine, addresses[index]);
+                    cache.put(highs[index], lows[index], result, snapshot.getEpoch());
+                } else {
+                    metrics.recordHit();
+                }
+                results[index] = result;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            snapshot.release();
+        }
+        return results;
+    }
+
+    @Nullable
+    @Override
+    public LookupResult getPlayerLookupResult(@NonNull UUID uniqueId) {
+        return playerLookups.get(uniqueId);
+    }
+
+    public PlayerLookups getPlayerLookups() {
+        return playerLookups;
+    }
+
+    public LookupMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public boolean isIn(@NonNull InetAddress ipAddress, @NonNull CountrySet countries) {
+        // Out of range ordinal, such as CountryIndex.NONE, is never contained in a set
+        return countries.contains(lookupCountry(ipAddress));
     }
 
     @NonNull
     @Override
     public CompletableFuture<@Nullable String> getCountryByIPAsync(@NonNull String ipAddress) {
-        return CompletableFuture
-                .supplyAsync(() -> this.getInetAddressByName(ipAddress), executorService)
-                .thenApplyAsync(this::getCountryByIP, executorService);
+        // Literals don't need to be resolved, so cache hits can be answered right away
+        AddressParser parser = addressParser.get();
+        if (parser.parse(ipAddress)) {
+            long high = parser.getHigh();
+            long low = parser.getLow();
+            int result = getCachedResult(high, low);
+            if (result != LookupCache.MISS) {
+                return completedFutures[PackedResult.country(result)];
+            }
+            return supplyAsync(() -> CountryIndex.codeOf(PackedResult.country(lookupResult(high, low))));
+        }
+
+        return hostnameResolver.resolve(ipAddress).thenCompose(this::getCountryByIPAsync);
+    }
+
+    @NonNull
+    @Override
+    public CompletableFuture<@Nullable CountryCode> getCountryCodeByHostnameAsync(@NonNull String hostname) {
+        AddressParser parser = addressParser.get();
+        if (parser.parse(hostname)) {
+            long high = parser.getHigh();
+            long low = parser.getLow();
+            int result = getCachedResult(high, low);
+            if (result != LookupCache.MISS) {
+                return completedCodeFutures[PackedResult.country(result)];
+            }
+            return supplyAsync(() -> CountryIndex.countryOf(PackedResult.country(lookupResult(high, low))));
+        }
+
+        // Resolved address is only looked up on the resolver thread if it's cached, misses go to the thread pool
+        return hostnameResolver.resolve(hostname).thenCompose(this::getCountryCodeByIPAsync);
     }
 
     public void close() {
+        // Uncached read timings let deployments compare lookup engines and file modes
+        logger.info("GeoIP database reads with {} lookup engine (file mode: {}): {}", settings.getLookupEngine(),
+                settings.getDatabaseFileMode(), metrics.getReaderLatency());
+        metrics.unregister();
+        hostnameResolver.close();
         updaterTaskExecutor.shutdown();
         try {
             if (!updaterTaskExecutor.awaitTermination(500, TimeUnit.MILLISECONDS)) {
@@ -259,18 +781,45 @@ public class GeoIPAPIImpl implements GeoIPAPI {
         } catch (Exception e) {
             logger.warn("Failed to shut down database thread pool", e);
         }
-        try {
-            dbReader.close();
-        } catch (Exception e) {
-            logger.warn("Failed to close database reader", e);
+        if (directoryLock != null) {
+            try {
+                directoryLock.close();
+            } catch (IOException e) {
+                logger.warn("Failed to release database directory lock", e);
+            }
+        }
+        ReaderSnapshot snapshot = readerSnapshot.getAndSet(null);
+        if (snapshot != null) {
+            saveCacheSnapshot();
+            snapshot.release();
         }
     }
 
+    private static LookupResult toLookupResult(InetAddress address, int result) {
+        int prefixLength = PackedResult.prefixLength(result);
+        if (address instanceof Inet4Address) {
+            prefixLength = Math.max(0, prefixLength - 96);
+        }
+        return new LookupResult(address, CountryIndex.countryOf(PackedResult.country(result)), prefixLength);
+    }
+
+    private static <T> CompletableFuture<@Nullable T>[] createCompletedFutures(IntFunction<@Nullable T> valueByIndex) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[CountryIndex.NONE + 1];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = CompletableFuture.completedFuture(valueByIndex.apply(i));
+        }
+        // Every element was created from valueByIndex above
+        @SuppressWarnings("unchecked")
+        CompletableFuture<@Nullable T>[] typed = (CompletableFuture<@Nullable T>[]) futures;
+        return typed;
+    }
+
     private InetAddress getInetAddressByName(String rawAddress) {
+        // Go through the resolver to get its timeout and caching instead of blocking on plain InetAddress#getByName
         try {
-            return InetAddress.getByName(rawAddress);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            return hostnameResolver.resolve(rawAddress).join();
+        } catch (CompletionException e) {
+            throw new RuntimeException(e.getCause());
         }
     }
 
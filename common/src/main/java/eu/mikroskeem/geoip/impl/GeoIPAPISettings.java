@@ -0,0 +1,398 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tunables for {@link GeoIPAPIImpl}
+ *
+ * @author Mark Vainomaa
+ */
+public final class GeoIPAPISettings {
+    private int cacheSize = 1 << 16;
+    private LookupEngineType lookupEngine = LookupEngineType.MAXMIND;
+    private DatabaseFileMode databaseFileMode = DatabaseFileMode.MEMORY_MAPPED;
+    private int nodeCacheSize = 0;
+    private int resolverThreads = 2;
+    private long resolveTimeout = 5;
+    private TimeUnit resolveTimeoutUnit = TimeUnit.SECONDS;
+    private long resolvedCacheTtl = 5;
+    private TimeUnit resolvedCacheTtlUnit = TimeUnit.MINUTES;
+    private long unresolvedCacheTtl = 30;
+    private TimeUnit unresolvedCacheTtlUnit = TimeUnit.SECONDS;
+    private boolean sharedDatabase = false;
+    private long sharedDatabasePollInterval = 1;
+    private TimeUnit sharedDatabasePollIntervalUnit = TimeUnit.MINUTES;
+    private Path instanceDirectory = null;
+    private long updateCheckInterval = 48;
+    private TimeUnit updateCheckIntervalUnit = TimeUnit.HOURS;
+    private long updateCheckJitter = 1;
+    private TimeUnit updateCheckJitterUnit = TimeUnit.HOURS;
+    private long updateRetryDelay = 5;
+    private TimeUnit updateRetryDelayUnit = TimeUnit.MINUTES;
+
+    /**
+     * Reads settings from plugin configuration. Missing and invalid values fall back to defaults
+     *
+     * @param config Configuration to read from
+     * @param logger Logger to warn about invalid values with
+     * @return Settings read from given configuration
+     */
+    public static GeoIPAPISettings fromConfig(ConfigSource config, Logger logger) {
+        GeoIPAPISettings settings = new GeoIPAPISettings();
+        String lookupEngine = getString(config, "lookup_engine");
+        if (lookupEngine != null) {
+            try {
+                settings.setLookupEngine(LookupEngineType.fromName(lookupEngine));
+            } catch (IllegalArgumentException e) {
+                logger.warn("Unknown lookup engine '{}', using '{}' instead", lookupEngine, settings.getLookupEngine());
+            }
+        }
+
+        String databaseFileMode = getString(config, "database_file_mode");
+        if (databaseFileMode != null) {
+            try {
+                settings.setDatabaseFileMode(DatabaseFileMode.fromName(databaseFileMode));
+            } catch (IllegalArgumentException e) {
+                logger.warn("Unknown database file mode '{}', using '{}' instead", databaseFileMode, settings.getDatabaseFileMode());
+            }
+        }
+        settings.setNodeCacheSize(Math.max(0, getInt(config, "database_node_cache_size", 0)));
+        settings.setCacheSize(Math.max(1, getInt(config, "lookup_cache_max_size", 65536)));
+
+        settings.setResolverThreads(Math.max(1, getInt(config, "hostname_resolver_threads", 2)));
+        settings.setResolveTimeout(getInt(config, "hostname_resolve_timeout_seconds", 5), TimeUnit.SECONDS);
+        settings.setResolvedCacheTtl(getInt(config, "hostname_cache_seconds", 300), TimeUnit.SECONDS);
+        settings.setUnresolvedCacheTtl(getInt(config, "hostname_negative_cache_seconds", 30), TimeUnit.SECONDS);
+
+        settings.setUpdateCheckInterval(Math.max(1, getInt(config, "update_check_interval_hours", 48)), TimeUnit.HOURS);
+        settings.setUpdateCheckJitter(Math.max(0, getInt(config, "update_check_jitter_minutes", 60)), TimeUnit.MINUTES);
+        settings.setUpdateRetryDelay(Math.max(1, getInt(config, "update_retry_delay_minutes", 5)), TimeUnit.MINUTES);
+        return settings;
+    }
+
+    @Nullable
+    private static String getString(ConfigSource config, String key) {
+        Object value = config.get(key);
+        return value != null ? value.toString() : null;
+    }
+
+    private static int getInt(ConfigSource config, String key, int def) {
+        Object value = config.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return def;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Sets maximum amount of cached lookup results. Actual size may be somewhat lower, as it's rounded down to a power of two
+     *
+     * @param cacheSize Maximum amount of cached lookup results
+     * @return this {@link GeoIPAPISettings}
+     */
+    public GeoIPAPISettings setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+        return this;
+    }
+
+    public LookupEngineType getLookupEngine() {
+        return lookupEngine;
+    }
+
+    /**
+     * Sets the engine used for database lookups
+     *
+     * @param lookupEngine Lookup engine type
+     * @return this {@link GeoIPAPISettings}
+     */
+    public GeoIPAPISettings setLookupEngine(LookupEngineType lookupEngine) {
+        this.lookupEngine = lookupEngine;
+        return this;
+    }
+
+    public DatabaseFileMode getDatabaseFileMode() {
+        return databaseFileMode;
+    }
+
+    /**
+     * Sets whether database file is loaded into heap or memory-mapped
+     *
+     * @param databaseFileMode Database file mode
+     * @return this {@link GeoIPAPISettings}
+     */
+    public GeoIPAPISettings setDatabaseFileMode(DatabaseFileMode databaseFileMode) {
+        this.databaseFileMode = databaseFileMode;
+        return this;
+    }
+
+    public int getNodeCacheSize() {
+        return nodeCacheSize;
+    }
+
+    /**
+     * Sets how many decoded database records MaxMind's reader caches. Only used by {@link LookupEngineType#MAXMIND}
+     *
+     * @param nodeCacheSize Amount of cached records, or 0 to disable the cache
+     * @return this {@link GeoIPAPISettings}
+     */
+    public GeoIPAPISettings setNodeCacheSize(int nodeCacheSize) {
+        if (nodeCacheSize < 0) {
+            throw new IllegalArgumentException("Node cache size can't be negative");
+        }
+        this.nodeCacheSize = nodeCacheSize;
+        return this;
+    }
+
+    public int getResolverThreads() {
+        return resolverThreads;
+    }
+
+    /**
+     * Sets how many threads are used for resolving hostnames
+     *
+     * @param resolverThreads Amount of resolver threads
+     * @return this {@link GeoIPAPISettings}
+     */
+    public GeoIPAPISettings setResolverThreads(int resolverThreads) {
+        if (resolverThreads < 1) {
+            throw new IllegalArgumentException("At least one resolver thread is required");
+        }
+        this.resolverThreads = resolverThreads;
+        return this;
+    }
+
+    public long getResolveTimeout() {
+        return resolveTimeout;
+    }
+
+    public TimeUnit getResolveTimeoutUnit() {
+        return resolveTimeoutUnit;
+    }
+
+    /**
+     * Sets how long resolving a hostname may take before giving up
+     *
+     * @param timeout Timeout
+     * @param unit Timeout unit
+     * @return this {@link GeoIPAPISettings}
+     */
+    public GeoIPAPISettings setResolveTimeout(long timeout, TimeUnit unit) {
+        this.resolveTimeout = timeout;
+        this.resolveTimeoutUnit = unit;
+        return this;
+    }
+
+    public long getResolvedCacheTtl() {
+        return resolvedCacheTtl;
+    }
+
+    public TimeUnit getResolvedCacheTtlUnit() {
+        return resolvedCacheTtlUnit;
+    }
+
+    /**
+     * Sets how long resolved hostnames are cached
+     *
+     * @param ttl Time to live
+     * @param unit Time to live unit
+     * @return this {@link GeoIPAPISettings}
+     */
+    public GeoIPAPISettings setResolvedCacheTtl(long ttl, TimeUnit unit) {
+        this.resolvedCacheTtl = ttl;
+        this.resolvedCacheTtlUnit = unit;
+        return this;
+    }
+
+    public long getUnresolvedCacheTtl() {
+        return unresolvedCacheTtl;
+    }
+
+    public TimeUnit getUnresolvedCacheTtlUnit() {
+        return unresolvedCacheTtlUnit;
+    }
+
+    /**
+     * Sets how long hostnames which failed to resolve are cached
+     *
+     * @param ttl Time to live
+     * @param unit Time to live unit
+     * @return this {@link GeoIPAPISettings}
+     */
+    public GeoIPAPISettings setUnresolvedCacheTtl(long ttl, TimeUnit unit) {
+        this.unresolvedCacheTtl = ttl;
+        this.unresolvedCacheTtlUnit = unit;
+        return this;
+    }
+
+    public boolean isSharedDatabase() {
+        return sharedDatabase;
+    }
+
+    /**
+     * Sets whether database directory is shared with other instances on the same host. Then only the instance
+     * holding the directory lock updates the database, and others reload it once it has changed
+     *
+     * @param sharedDatabase Whether database directory is shared
+     * @return this {@link GeoIPAPISettings}
+     */
+    public GeoIPAPISettings setSharedDatabase(boolean sharedDatabase) {
+        this.sharedDatabase = sharedDatabase;
+        return this;
+    }
+
+    public long getSharedDatabasePollInterval() {
+        return sharedDatabasePollInterval;
+    }
+
+    public TimeUnit getSharedDatabasePollIntervalUnit() {
+        return sharedDatabasePollIntervalUnit;
+    }
+
+    /**
+     * Sets how often shared database is checked for changes made by other instances
+     *
+     * @param interval Poll interval
+     * @param unit Poll interval unit
+     * @return this {@link GeoIPAPISettings}
+     */
+    public GeoIPAPISettings setSharedDatabasePollInterval(long interval, TimeUnit unit) {
+        this.sharedDatabasePollInterval = interval;
+        this.sharedDatabasePollIntervalUnit = unit;
+        return this;
+    }
+
+    @Nullable
+    public Path getInstanceDirectory() {
+        return instanceDirectory;
+    }
+
+    /**
+     * Sets directory for state private to this instance, like the lookup cache snapshot. Defaults to database
+     * directory, which is not suitable when it's shared
+     *
+     * @param instanceDirectory Instance directory, or null to use database directory
+     * @return this {@link GeoIPAPISettings}
+     */
+    public GeoIPAPISettings setInstanceDirectory(@Nullable Path instanceDirectory) {
+        this.instanceDirectory = instanceDirectory;
+        return this;
+    }
+
+    public long getUpdateCheckInterval() {
+        return updateCheckInterval;
+    }
+
+    public TimeUnit getUpdateCheckIntervalUnit() {
+        return updateCheckIntervalUnit;
+    }
+
+    /**
+     * Sets how often database updates are checked for
+     *
+     * @param interval Check interval
+     * @param unit Check interval unit
+     * @return this {@link GeoIPAPISettings}
+     */
+    public GeoIPAPISettings setUpdateCheckInterval(long interval, TimeUnit unit) {
+        this.updateCheckInterval = interval;
+        this.updateCheckIntervalUnit = unit;
+        return this;
+    }
+
+    public long getUpdateCheckJitter() {
+        return updateCheckJitter;
+    }
+
+    public TimeUnit getUpdateCheckJitterUnit() {
+        return updateCheckJitterUnit;
+    }
+
+    /**
+     * Sets upper bound of random delay added to every scheduled database update check
+     *
+     * @param jitter Jitter
+     * @param unit Jitter unit
+     * @return this {@link GeoIPAPISettings}
+     */
+    public GeoIPAPISettings setUpdateCheckJitter(long jitter, TimeUnit unit) {
+        this.updateCheckJitter = jitter;
+        this.updateCheckJitterUnit = unit;
+        return this;
+    }
+
+    public long getUpdateRetryDelay() {
+        return updateRetryDelay;
+    }
+
+    public TimeUnit getUpdateRetryDelayUnit() {
+        return updateRetryDelayUnit;
+    }
+
+    /**
+     * Sets delay before retrying a failed database update check. Delay doubles with every consecutive failure,
+     * up to the regular check interval
+     *
+     * @param delay Retry delay
+     * @param unit Retry delay unit
+     * @return this {@link GeoIPAPISettings}
+     */
+    public GeoIPAPISettings setUpdateRetryDelay(long delay, TimeUnit unit) {
+        this.updateRetryDelay = delay;
+        this.updateRetryDelayUnit = unit;
+        return this;
+    }
+
+    /**
+     * Plugin configuration as seen by {@link #fromConfig(ConfigSource, Logger)}
+     */
+    @FunctionalInterface
+    public interface ConfigSource {
+        /**
+         * Gets raw configuration value
+         *
+         * @param key Configuration key
+         * @return Configuration value, or null if it's not set
+         */
+        @Nullable
+        Object get(String key);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,176 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Resolves hostnames on a dedicated, bounded thread pool, so slow DNS never holds up database lookups.
+ * <p>
+ * Both successful and failed resolutions are cached for their own configurable time, independent of
+ * the JVM wide DNS cache policy. Concurrent requests for the same hostname share a single resolution,
+ * and resolutions taking longer than the timeout fail with a {@link TimeoutException}.
+ *
+ * @author Mark Vainomaa
+ */
+final class HostnameResolver {
+    private static final int MAX_CACHE_SIZE = 4096;
+    private static final int QUEUE_SIZE_PER_THREAD = 64;
+    private final ThreadPoolExecutor resolverExecutor;
+    private final ScheduledExecutorService timeoutExecutor;
+    private final long timeout;
+    private final long positiveTtl;
+    private final long negativeTtl;
+    private final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<InetAddress>> inFlight = new ConcurrentHashMap<>();
+
+    HostnameResolver(GeoIPAPISettings settings) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        int threads = settings.getResolverThreads();
+        this.resolverExecutor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<>(threads * QUEUE_SIZE_PER_THREAD), r -> {
+            Thread thread = new Thread(r);
+            thread.setName("GeoIPAPI hostname resolver #" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.resolverExecutor.allowCoreThreadTimeOut(true);
+        this.timeoutExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r);
+            thread.setName("GeoIPAPI hostname resolver timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timeout = settings.getResolveTimeoutUnit().toNanos(settings.getResolveTimeout());
+        this.positiveTtl = settings.getResolvedCacheTtlUnit().toNanos(settings.getResolvedCacheTtl());
+        this.negativeTtl = settings.getUnresolvedCacheTtlUnit().toNanos(settings.getUnresolvedCacheTtl());
+    }
+
+    /**
+     * Resolves given hostname
+     *
+     * @param hostname Hostname to resolve
+     * @return Future of the resolved address. Fails with {@link UnknownHostException} if hostname does not resolve
+     */
+    CompletableFuture<InetAddress> resolve(String hostname) {
+        String key = hostname.toLowerCase(Locale.ROOT);
+        Entry entry = cache.get(key);
+        if (entry != null && entry.expiresAt - System.nanoTime() > 0) {
+            return copy(entry.result);
+        }
+
+        CompletableFuture<InetAddress> result = new CompletableFuture<>();
+        CompletableFuture<InetAddress> existing = inFlight.putIfAbsent(key, result);
+        if (existing != null) {
+            return copy(existing);
+        }
+
+        try {
+            Future<?> task = resolverExecutor.submit(() -> {
+                try {
+                    InetAddress address = InetAddress.getByName(hostname);
+                    CompletableFuture<InetAddress> resolved = CompletableFuture.completedFuture(address);
+                    cacheResult(key, resolved, positiveTtl);
+                    result.complete(address);
+                } catch (UnknownHostException e) {
+                    CompletableFuture<InetAddress> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(e);
+                    cacheResult(key, failed, negativeTtl);
+                    result.completeExceptionally(e);
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            ScheduledFuture<?> timeoutTask = timeoutExecutor.schedule(() -> {
+                if (result.completeExceptionally(new TimeoutException("Resolving '" + hostname + "' timed out"))) {
+                    task.cancel(true);
+                }
+            }, timeout, TimeUnit.NANOSECONDS);
+            result.whenComplete((address, e) -> timeoutTask.cancel(false));
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+
+        result.whenComplete((address, e) -> inFlight.remove(key, result));
+        return copy(result);
+    }
+
+    private static CompletableFuture<InetAddress> copy(CompletableFuture<InetAddress> result) {
+        // Shared futures stay private, so callers completing or cancelling theirs can't affect others
+        return result.thenApply(Function.identity());
+    }
+
+    private void cacheResult(String key, CompletableFuture<InetAddress> result, long ttl) {
+        if (ttl <= 0) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (cache.size() >= MAX_CACHE_SIZE) {
+            cache.values().removeIf(entry -> entry.expiresAt - now <= 0);
+
+            // Still full of live entries, drop some of them
+            Iterator<String> keys = cache.keySet().iterator();
+            while (cache.size() >= MAX_CACHE_SIZE && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        }
+        cache.put(key, new Entry(result, now + ttl));
+    }
+
+    void close() {
+        timeoutExecutor.shutdownNow();
+        resolverExecutor.shutdownNow();
+        cache.clear();
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<InetAddress> result;
+        private final long expiresAt;
+
+        Entry(CompletableFuture<InetAddress> result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+
+/**
+ * Coalesces concurrent cache misses, so that only one database lookup per address block runs at a time.
+ * <p>
+ * Misses are keyed by the same IPv4 /24 or IPv6 /64 block as {@link LookupCache} uses. The first miss of
+ * a block performs the lookup, and concurrent misses in the same block wait for its result. If the result
+ * turns out to be narrower than the block, waiting callers check the cache for their own address, and fall
+ * back to their own lookup.
+ *
+ * @author Mark Vainomaa
+ */
+final class InFlightLookups {
+    private final ConcurrentHashMap<BlockKey, CompletableFuture<Integer>> lookups = new ConcurrentHashMap<>();
+    private final LookupCache cache;
+    private final LookupMetrics metrics;
+
+    InFlightLookups(LookupCache cache, LookupMetrics metrics) {
+        this.cache = cache;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Loads a lookup result, or waits for a lookup of the same block already in flight
+     *
+     * @param high Upper 64 bits of the address
+     * @param low Lower 64 bits of the address
+     * @param loader Looks the address up and caches the result
+     * @return Packed lookup result
+     */
+    int load(long high, long low, IntSupplier loader) {
+        int blockPrefix = LookupCache.blockPrefix(high, low);
+        BlockKey key = new BlockKey(Addresses.maskHigh(high, blockPrefix), Addresses.maskLow(low, blockPrefix));
+        CompletableFuture<Integer> lookup = new CompletableFuture<>();
+        CompletableFuture<Integer> pending = lookups.putIfAbsent(key, lookup);
+        if (pending == null) {
+            try {
+                int result = loader.getAsInt();
+                lookup.complete(result);
+                return result;
+            } catch (Throwable e) {
+                lookup.completeExceptionally(e);
+                throw e;
+            } finally {
+                lookups.remove(key, lookup);
+            }
+        }
+
+        int result = await(pending);
+        if (PackedResult.prefixLength(result) <= blockPrefix || (result = cache.get(high, low)) != LookupCache.MISS) {
+            metrics.recordCoalesced();
+            return result;
+        }
+        return loader.getAsInt();
+    }
+
+    private static int await(CompletableFuture<Integer> lookup) {
+        try {
+            return lookup.join();
+        } catch (CompletionException e) {
+            // Rethrow what the lookup itself threw
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class BlockKey {
+        private final long high;
+        private final long low;
+
+        BlockKey(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            BlockKey that = (BlockKey) o;
+            return high == that.high && low == that.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high * 31 + low);
+        }
+    }
+}
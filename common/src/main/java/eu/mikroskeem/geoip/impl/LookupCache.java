@@ -0,0 +1,483 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Cache of {@link PackedResult packed lookup results}, keyed by raw addresses or networks.
+ * <p>
+ * IPv4 addresses are stored as IPv4-mapped IPv6 addresses, so every key is a pair of longs. Entries live in
+ * lock striped open addressed tables, where each key may occupy one of {@link #PROBE_LENGTH} slots
+ * following its hash. When all of them are taken, least recently accessed entry is the eviction candidate,
+ * but it's replaced only if the new key has been accessed more often, as estimated by a {@link FrequencySketch}.
+ * This way a flood of addresses seen only once can't push out frequently looked up ones. Reads use
+ * optimistic locking and don't allocate.
+ * <p>
+ * Results whose matched network covers the whole IPv4 /24 or IPv6 /64 around the address are stored under
+ * that block, so a single entry answers every address in it. Lookups probe the exact address first and
+ * the block second.
+ * <p>
+ * Entries don't expire by time. Every entry is tagged with the epoch of the database snapshot it was
+ * resolved from, and once the database gets replaced, entries of older epochs keep being served until
+ * {@link #revalidate(int, Resolver)} re-resolves them against the new database.
+ *
+ * @author Mark Vainomaa
+ */
+final class LookupCache {
+    /* Returned when address is not cached */
+    static final int MISS = -1;
+
+    private static final int PROBE_LENGTH = 8;
+    private static final int IPV4_BLOCK_PREFIX = 96 + 24;
+    private static final int IPV6_BLOCK_PREFIX = 64;
+    /* Set by stripes on results of an older epoch, never returned to callers */
+    private static final int STALE = 1 << 30;
+    /* Keys at least this popular are let in now and then even if the victim is as popular, see Stripe#admit */
+    private static final int ADMISSION_JITTER_FREQUENCY = 6;
+    private final Stripe[] stripes;
+    private final int stripeShift;
+    private final int capacity;
+    private final LongAdder rejectedAdmissions = new LongAdder();
+    private final long clockOrigin = System.nanoTime();
+    private volatile int epoch = 0;
+
+    /**
+     * @param capacity Maximum amount of entries. Actual capacity may be lower, as stripe sizes are rounded down to a power of two
+     */
+    LookupCache(int capacity) {
+        capacity = Math.max(1, capacity);
+
+        // Every stripe needs room for a full probe window, so small caches get fewer stripes
+        int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1)) << 1;
+        stripeCount = Math.min(stripeCount, Integer.highestOneBit(Math.max(1, capacity / PROBE_LENGTH)));
+        int stripeCapacity = Integer.highestOneBit(capacity / stripeCount);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe(stripeCapacity);
+        }
+        this.stripeShift = 64 - Integer.numberOfTrailingZeros(stripeCount);
+        this.capacity = stripeCount * stripeCapacity;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Counts cached entries. Walks the whole cache, so this is meant only for statistics
+     *
+     * @return Amount of cached entries
+     */
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return How many new entries were not cached, because they were less popular than the entry they'd replace
+     */
+    long getRejectedAdmissions() {
+        return rejectedAdmissions.sum();
+    }
+
+    int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Sets current database epoch. Existing entries become stale, but are still served until revalidated
+     *
+     * @param epoch New epoch
+     */
+    void setEpoch(int epoch) {
+        this.epoch = epoch;
+    }
+
+    int get(int ipv4) {
+        return get(0L, Addresses.ipv4ToLow(ipv4));
+    }
+
+    int get(long high, long low) {
+        int now = now();
+        long hash = hash(high, low);
+        Stripe stripe = stripeFor(hash);
+        int exact = stripe.get(high, low, (int) hash, now);
+        if (exact != MISS && (exact & STALE) == 0) {
+            stripe.sketch.increment(hash);
+            return exact;
+        }
+
+        // Stale exact entry is only a fallback, block might already hold a result of the current database
+        int blockPrefix = blockPrefix(high, low);
+        long blockHigh = Addresses.maskHigh(high, blockPrefix);
+        long blockLow = Addresses.maskLow(low, blockPrefix);
+        long blockHash = hash(blockHigh, blockLow);
+        Stripe blockStripe = stripeFor(blockHash);
+        int block = blockStripe.get(blockHigh, blockLow, (int) blockHash, now);
+
+        // Block key might also be an exact address with a narrower network, which may not contain this address
+        if (block != MISS) {
+            int prefixLength = PackedResult.prefixLength(block);
+            if (Addresses.maskHigh(high, prefixLength) != Addresses.maskHigh(blockHigh, prefixLength)
+                    || Addresses.maskLow(low, prefixLength) != Addresses.maskLow(blockLow, prefixLength)) {
+                block = MISS;
+            }
+        }
+
+        // Misses count towards both keys, as the result may get cached under either of them
+        blockStripe.sketch.increment(blockHash);
+        if (block != MISS && ((block & STALE) == 0 || exact == MISS)) {
+            return block & ~STALE;
+        }
+        stripe.sketch.increment(hash);
+        return exact != MISS ? exact & ~STALE : MISS;
+    }
+
+    void put(int ipv4, int result, int epoch) {
+        put(0L, Addresses.ipv4ToLow(ipv4), result, epoch);
+    }
+
+    /**
+     * Caches a lookup result. Results resolved under any other than current epoch are dropped
+     *
+     * @param high Upper 64 bits of the address
+     * @param low Lower 64 bits of the address
+     * @param result Packed lookup result
+     * @param epoch Epoch of the database snapshot result was resolved from
+     */
+    void put(long high, long low, int result, int epoch) {
+        int blockPrefix = blockPrefix(high, low);
+        if (PackedResult.prefixLength(result) <= blockPrefix) {
+            high = Addresses.maskHigh(high, blockPrefix);
+            low = Addresses.maskLow(low, blockPrefix);
+        }
+        putEntry(high, low, result, epoch);
+    }
+
+    /**
+     * Stores a result under given key as is. Result must be valid for the key address itself
+     */
+    private void putEntry(long high, long low, int result, int epoch) {
+        long hash = hash(high, low);
+        stripeFor(hash).put(high, low, hash, result, epoch, now());
+    }
+
+    void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    /**
+     * Visits every entry of the current epoch. Entries added or removed during the walk may or may not be visited
+     *
+     * @param visitor Entry visitor
+     */
+    void forEach(EntryVisitor visitor) {
+        int now = now();
+        int epoch = this.epoch;
+        for (Stripe stripe : stripes) {
+            stripe.forEach(visitor, now, epoch, false);
+        }
+    }
+
+    /**
+     * Re-resolves entries of older epochs, most recently accessed first. Gives up once epoch moves on again,
+     * as the next revalidation takes over then
+     *
+     * @param epoch Epoch to revalidate entries into
+     * @param resolver Resolves addresses against the database of given epoch
+     * @return Amount of entries revalidated
+     * @throws IOException When resolving fails
+     */
+    int revalidate(int epoch, Resolver resolver) throws IOException {
+        EntryList entries = new EntryList();
+        int now = now();
+        for (Stripe stripe : stripes) {
+            stripe.forEach(entries, now, epoch, true);
+        }
+
+        int[] order = entries.hottestFirst();
+        for (int i = 0; i < order.length; i++) {
+            if (this.epoch != epoch) {
+                return i;
+            }
+            // Written back under the same key, as the stale entry would shadow a result stored under another one.
+            // Key address is either the looked up address or the network its result covered, so the fresh result
+            // is valid for it either way
+            int index = order[i];
+            putEntry(entries.highs[index], entries.lows[index], resolver.resolve(entries.highs[index], entries.lows[index]), epoch);
+        }
+        return order.length;
+    }
+
+    /**
+     * @param high Upper 64 bits of the address
+     * @param low Lower 64 bits of the address
+     * @return Prefix length of the block results covering whole block are cached under
+     */
+    static int blockPrefix(long high, long low) {
+        return Addresses.isIpv4(high, low) ? IPV4_BLOCK_PREFIX : IPV6_BLOCK_PREFIX;
+    }
+
+    private Stripe stripeFor(long hash) {
+        return stripes.length == 1 ? stripes[0] : stripes[(int) (hash >>> stripeShift)];
+    }
+
+    private int now() {
+        return (int) TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - clockOrigin);
+    }
+
+    private static long hash(long high, long low) {
+        // MurmurHash3 finalizer
+        long hash = high * 0x9E3779B97F4A7C15L + low;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    interface EntryVisitor {
+        /**
+         * @param high Upper 64 bits of the key
+         * @param low Lower 64 bits of the key
+         * @param result Packed lookup result
+         * @param idleSeconds Seconds since the entry was last accessed
+         */
+        void visit(long high, long low, int result, int idleSeconds);
+    }
+
+    interface Resolver {
+        /**
+         * @param high Upper 64 bits of the address
+         * @param low Lower 64 bits of the address
+         * @return Packed lookup result
+         * @throws IOException When lookup fails
+         */
+        int resolve(long high, long low) throws IOException;
+    }
+
+    /**
+     * Growable list of visited entries
+     */
+    static final class EntryList implements EntryVisitor {
+        long[] highs = new long[1024];
+        long[] lows = new long[1024];
+        int[] results = new int[1024];
+        int[] idle = new int[1024];
+        int size = 0;
+
+        @Override
+        public void visit(long high, long low, int result, int idleSeconds) {
+            if (size == highs.length) {
+                highs = Arrays.copyOf(highs, size * 2);
+                lows = Arrays.copyOf(lows, size * 2);
+                results = Arrays.copyOf(results, size * 2);
+                idle = Arrays.copyOf(idle, size * 2);
+            }
+            highs[size] = high;
+            lows[size] = low;
+            results[size] = result;
+            idle[size] = idleSeconds;
+            size++;
+        }
+
+        /**
+         * @return Entry indexes, ordered from the most recently accessed entry
+         */
+        int[] hottestFirst() {
+            // Sort by idle time, keeping entry index in the lower bits
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = (long) idle[i] << 32 | i;
+            }
+            Arrays.sort(order);
+
+            int[] indexes = new int[size];
+            for (int i = 0; i < size; i++) {
+                indexes[i] = (int) order[i];
+            }
+            return indexes;
+        }
+    }
+
+    private final class Stripe {
+        private final StampedLock lock = new StampedLock();
+        private final FrequencySketch sketch;
+        private final int mask;
+        private final int probeLength;
+        private final long[] highs;
+        private final long[] lows;
+        /* Stored packed result + 1, so zero marks an empty slot */
+        private final int[] values;
+        private final int[] epochs;
+        private final int[] accessed;
+
+        Stripe(int capacity) {
+            this.sketch = new FrequencySketch(capacity);
+            this.mask = capacity - 1;
+            this.probeLength = Math.min(PROBE_LENGTH, capacity);
+            this.highs = new long[capacity];
+            this.lows = new long[capacity];
+            this.values = new int[capacity];
+            this.epochs = new int[capacity];
+            this.accessed = new int[capacity];
+        }
+
+        int get(long high, long low, int hash, int now) {
+            long stamp = lock.tryOptimisticRead();
+            int result = find(high, low, hash, now);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    result = find(high, low, hash, now);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return result;
+        }
+
+        private int find(long high, long low, int hash, int now) {
+            for (int i = 0; i < probeLength; i++) {
+                int slot = (hash + i) & mask;
+                int value = values[slot];
+                if (value == 0) {
+                    // Slots are never emptied one by one, so the key can't be further away
+                    return MISS;
+                }
+                if (highs[slot] == high && lows[slot] == low) {
+                    // Racy, but losing an access time update only makes the entry look a bit colder
+                    if (accessed[slot] != now) {
+                        accessed[slot] = now;
+                    }
+                    return epochs[slot] == LookupCache.this.epoch ? value - 1 : (value - 1) | STALE;
+                }
+            }
+            return MISS;
+        }
+
+        void put(long high, long low, long hash, int result, int epoch, int now) {
+            long stamp = lock.writeLock();
+            try {
+                // Checked under the lock, so results of an older database can't sneak in after revalidation passed
+                if (epoch != LookupCache.this.epoch) {
+                    return;
+                }
+
+                int target = -1;
+                int oldest = Integer.MAX_VALUE;
+                boolean free = false;
+                for (int i = 0; i < probeLength; i++) {
+                    int slot = ((int) hash + i) & mask;
+                    if (values[slot] == 0 || (highs[slot] == high && lows[slot] == low)) {
+                        target = slot;
+                        free = true;
+                        break;
+                    }
+                    if (accessed[slot] < oldest) {
+                        oldest = accessed[slot];
+                        target = slot;
+                    }
+                }
+
+                if (!free && !admit(hash, hash(highs[target], lows[target]))) {
+                    rejectedAdmissions.increment();
+                    return;
+                }
+
+                highs[target] = high;
+                lows[target] = low;
+                values[target] = result + 1;
+                epochs[target] = epoch;
+                accessed[target] = now;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Decides whether a new key may replace the eviction victim
+         */
+        private boolean admit(long candidateHash, long victimHash) {
+            int candidateFrequency = sketch.frequency(candidateHash);
+            if (candidateFrequency > sketch.frequency(victimHash)) {
+                return true;
+            }
+
+            // Otherwise an attacker could keep popular keys out by inflating the frequency of victims through hash collisions
+            return candidateFrequency >= ADMISSION_JITTER_FREQUENCY && (ThreadLocalRandom.current().nextInt() & 127) == 0;
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                int size = 0;
+                for (int slot = 0; slot <= mask; slot++) {
+                    if (values[slot] != 0) {
+                        size++;
+                    }
+                }
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void forEach(EntryVisitor visitor, int now, int epoch, boolean stale) {
+            long stamp = lock.readLock();
+            try {
+                for (int slot = 0; slot <= mask; slot++) {
+                    if (values[slot] != 0 && (epochs[slot] != epoch) == stale) {
+                        visitor.visit(highs[slot], lows[slot], values[slot] - 1, now - accessed[slot]);
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                Arrays.fill(values, 0);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+}
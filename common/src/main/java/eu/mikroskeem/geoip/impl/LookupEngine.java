@@ -0,0 +1,57 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * Resolves addresses to country indexes (see {@link CountryIndex}) and matched network prefix lengths,
+ * packed with {@link PackedResult}
+ *
+ * @author Mark Vainomaa
+ */
+interface LookupEngine extends Closeable {
+    /**
+     * Looks up country by address
+     *
+     * @param address Address to look up
+     * @return Packed lookup result
+     * @throws IOException When database read fails
+     */
+    int lookup(InetAddress address) throws IOException;
+
+    /**
+     * Looks up country by raw IPv6 address. IPv4 addresses are passed in IPv4-mapped form
+     *
+     * @param high Upper 64 bits of the address
+     * @param low Lower 64 bits of the address
+     * @return Packed lookup result
+     * @throws IOException When database read fails
+     */
+    int lookup(long high, long low) throws IOException;
+}
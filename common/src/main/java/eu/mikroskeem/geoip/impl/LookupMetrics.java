@@ -0,0 +1,219 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Lookup counters and latency histograms of a {@link GeoIPAPIImpl}. Exposed through JMX as
+ * {@code eu.mikroskeem.geoip:type=LookupMetrics}
+ *
+ * @author Mark Vainomaa
+ */
+public final class LookupMetrics implements LookupMetricsMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(LookupMetrics.class);
+    private static final String OBJECT_NAME = "eu.mikroskeem.geoip:type=LookupMetrics";
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder coalescedLookups = new LongAdder();
+    private final LongAdder notFound = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LatencyHistogram lookupLatency = new LatencyHistogram();
+    private final LatencyHistogram asyncLatency = new LatencyHistogram();
+    private final LatencyHistogram readerLatency = new LatencyHistogram();
+    private final LatencyHistogram updateLatency = new LatencyHistogram();
+    private final LookupCache cache;
+    private final LongSupplier executorQueueDepth;
+    private volatile boolean registered = false;
+
+    LookupMetrics(LookupCache cache, LongSupplier executorQueueDepth) {
+        this.cache = cache;
+        this.executorQueueDepth = executorQueueDepth;
+    }
+
+    void recordHit() {
+        cacheHits.increment();
+    }
+
+    void recordMiss() {
+        cacheMisses.increment();
+    }
+
+    void recordCoalesced() {
+        coalescedLookups.increment();
+    }
+
+    void recordNotFound() {
+        notFound.increment();
+    }
+
+    void recordError() {
+        errors.increment();
+    }
+
+    void recordLookup(long nanos) {
+        lookupLatency.record(nanos);
+    }
+
+    void recordAsync(long nanos) {
+        asyncLatency.record(nanos);
+    }
+
+    void recordRead(long nanos) {
+        readerLatency.record(nanos);
+    }
+
+    void recordUpdate(long nanos) {
+        updateLatency.record(nanos);
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public long getCoalescedLookups() {
+        return coalescedLookups.sum();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        long hits = cacheHits.sum();
+        long total = hits + cacheMisses.sum();
+        return total > 0 ? (double) hits / total : 0D;
+    }
+
+    @Override
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    @Override
+    public int getCacheCapacity() {
+        return cache.getCapacity();
+    }
+
+    @Override
+    public long getRejectedAdmissions() {
+        return cache.getRejectedAdmissions();
+    }
+
+    @Override
+    public long getNotFound() {
+        return notFound.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getExecutorQueueDepth() {
+        return executorQueueDepth.getAsLong();
+    }
+
+    @Override
+    public LatencySnapshot getLookupLatency() {
+        return lookupLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getAsyncLatency() {
+        return asyncLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getReaderLatency() {
+        return readerLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getUpdateLatency() {
+        return updateLatency.snapshot();
+    }
+
+    /**
+     * Describes current metrics in human readable form
+     *
+     * @return Lines of text
+     */
+    public List<String> describe() {
+        return Arrays.asList(
+                String.format("Cache: %d hits, %d misses (%.1f%% hit rate), %d misses coalesced", getCacheHits(), getCacheMisses(),
+                        getCacheHitRate() * 100, getCoalescedLookups()),
+                "Cache size: " + getCacheSize() + "/" + getCacheCapacity() + ", " + getRejectedAdmissions() + " rejected admissions",
+                "Not found: " + getNotFound() + ", errors: " + getErrors(),
+                "Executor queue depth: " + getExecutorQueueDepth(),
+                "Cache misses: " + getLookupLatency(),
+                "Async lookups: " + getAsyncLatency(),
+                "Database reads: " + getReaderLatency(),
+                "Database updates: " + getUpdateLatency()
+        );
+    }
+
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+                registered = true;
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to register lookup metrics MBean", e);
+        }
+    }
+
+    void unregister() {
+        if (!registered) {
+            return;
+        }
+        registered = false;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            server.unregisterMBean(name);
+        } catch (Exception e) {
+            logger.warn("Failed to unregister lookup metrics MBean", e);
+        }
+    }
+}
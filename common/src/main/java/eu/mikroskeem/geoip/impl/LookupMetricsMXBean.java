@@ -0,0 +1,85 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+/**
+ * Management interface of {@link LookupMetrics}
+ *
+ * @author Mark Vainomaa
+ */
+public interface LookupMetricsMXBean {
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    /**
+     * @return Cache misses answered by a concurrent lookup of the same address block
+     */
+    long getCoalescedLookups();
+
+    double getCacheHitRate();
+
+    /**
+     * @return Amount of cached lookup results
+     */
+    int getCacheSize();
+
+    /**
+     * @return Maximum amount of cached lookup results
+     */
+    int getCacheCapacity();
+
+    /**
+     * @return New lookup results which were not cached, because the entry they'd replace was more popular
+     */
+    long getRejectedAdmissions();
+
+    long getNotFound();
+
+    long getErrors();
+
+    long getExecutorQueueDepth();
+
+    /**
+     * @return Latency of synchronous lookups not answered from cache, including waiting for a coalesced database read
+     */
+    LatencySnapshot getLookupLatency();
+
+    /**
+     * @return Latency of asynchronous lookups not answered from cache, from submission until completion
+     */
+    LatencySnapshot getAsyncLatency();
+
+    /**
+     * @return Latency of database reads
+     */
+    LatencySnapshot getReaderLatency();
+
+    /**
+     * @return Duration of database updates, including the download
+     */
+    LatencySnapshot getUpdateLatency();
+}
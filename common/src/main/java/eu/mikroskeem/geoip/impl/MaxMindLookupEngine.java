@@ -0,0 +1,95 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import com.maxmind.db.CHMCache;
+import com.maxmind.db.Network;
+import com.maxmind.db.NoCache;
+import com.maxmind.db.Reader;
+import com.maxmind.geoip2.DatabaseReader;
+import com.maxmind.geoip2.exception.AddressNotFoundException;
+import com.maxmind.geoip2.exception.GeoIp2Exception;
+import com.maxmind.geoip2.model.CountryResponse;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.file.Path;
+
+/**
+ * Lookup engine backed by MaxMind's {@link DatabaseReader}.
+ * <p>
+ * Reported prefix is the one of the network the matched record covers. Addresses not found in the
+ * database are reported as a single host, as the reader does not expose networks for them.
+ *
+ * @author Mark Vainomaa
+ */
+final class MaxMindLookupEngine implements LookupEngine {
+    private final DatabaseReader reader;
+
+    /**
+     * @param databaseFile Database file
+     * @param fileMode How database file is accessed
+     * @param nodeCacheSize Amount of decoded data records to cache, or 0 to not cache them
+     */
+    MaxMindLookupEngine(Path databaseFile, DatabaseFileMode fileMode, int nodeCacheSize) throws IOException {
+        this.reader = new DatabaseReader.Builder(databaseFile.toFile())
+                .fileMode(fileMode == DatabaseFileMode.MEMORY ? Reader.FileMode.MEMORY : Reader.FileMode.MEMORY_MAPPED)
+                .withCache(nodeCacheSize > 0 ? new CHMCache(nodeCacheSize) : NoCache.getInstance())
+                .build();
+    }
+
+    @Override
+    public int lookup(InetAddress address) throws IOException {
+        try {
+            CountryResponse response = reader.country(address);
+            return PackedResult.pack(CountryIndex.indexOf(response.getCountry().getIsoCode()),
+                    prefixLength(address, response.getTraits().getNetwork()));
+        } catch (AddressNotFoundException e) {
+            return PackedResult.pack(CountryIndex.NONE, 128);
+        } catch (GeoIp2Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static int prefixLength(InetAddress address, Network network) {
+        if (network == null) {
+            return 128;
+        }
+        // Prefixes are packed for 128 bit addresses, IPv4 addresses live in the last 32 bits
+        return address instanceof Inet4Address ? 96 + network.getPrefixLength() : network.getPrefixLength();
+    }
+
+    @Override
+    public int lookup(long high, long low) throws IOException {
+        return lookup(Addresses.toInetAddress(high, low));
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
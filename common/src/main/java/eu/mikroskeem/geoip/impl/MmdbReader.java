@@ -0,0 +1,439 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Minimal reader for the MaxMind DB format, which understands just enough to walk the search tree and
+ * to pick country ISO codes out of data records.
+ * <p>
+ * Decoded countries are cached by data record offset, in a direct mapped table of ints. Every entry packs
+ * the country index together with the upper bits of the offset, so a racy read either sees a whole entry
+ * or misses, and cache hits don't allocate.
+ * <p>
+ * See <a href="https://maxmind.github.io/MaxMind-DB/">MaxMind DB file format specification</a>
+ *
+ * @author Mark Vainomaa
+ */
+final class MmdbReader {
+    private static final byte[] METADATA_START_MARKER = {
+            (byte) 0xAB, (byte) 0xCD, (byte) 0xEF, 'M', 'a', 'x', 'M', 'i', 'n', 'd', '.', 'c', 'o', 'm'
+    };
+    private static final int METADATA_MAX_SIZE = 128 * 1024;
+    private static final int DATA_SECTION_SEPARATOR_SIZE = 16;
+
+    private static final byte[] KEY_COUNTRY = "country".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY_ISO_CODE = "iso_code".getBytes(StandardCharsets.UTF_8);
+
+    private static final int TYPE_POINTER = 1;
+    private static final int TYPE_UTF8_STRING = 2;
+    private static final int TYPE_DOUBLE = 3;
+    private static final int TYPE_UINT16 = 5;
+    private static final int TYPE_UINT32 = 6;
+    private static final int TYPE_MAP = 7;
+    private static final int TYPE_UINT64 = 9;
+    private static final int TYPE_UINT128 = 10;
+    private static final int TYPE_ARRAY = 11;
+    private static final int TYPE_BOOLEAN = 14;
+    private static final int TYPE_FLOAT = 15;
+
+    private static final int COUNTRY_CACHE_BITS = 12;
+    private static final int COUNTRY_CACHE_MASK = (1 << COUNTRY_CACHE_BITS) - 1;
+    /* Country index + 1 is stored in the lowest bits, so that an empty entry never matches */
+    private static final int COUNTRY_BITS = 10;
+    private static final int COUNTRY_MASK = (1 << COUNTRY_BITS) - 1;
+
+    private final ByteBuffer buffer;
+    private final int nodeCount;
+    private final int recordSize;
+    private final int ipVersion;
+    private final int nodeByteSize;
+    private final int dataSectionStart;
+    private final int ipv4Start;
+    private final int[] countryCache = new int[1 << COUNTRY_CACHE_BITS];
+
+    private MmdbReader(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        // Decode metadata
+        int metadataStart = findMetadataStart(buffer);
+        Decoder metadata = new Decoder(metadataStart, 0);
+        long nodeCount = -1;
+        int recordSize = -1;
+        int ipVersion = -1;
+        int formatVersion = -1;
+        int entries = metadata.readMapSize();
+        for (int i = 0; i < entries; i++) {
+            String key = metadata.readString();
+            switch (key) {
+                case "node_count":
+                    nodeCount = metadata.readUnsigned();
+                    break;
+                case "record_size":
+                    recordSize = (int) metadata.readUnsigned();
+                    break;
+                case "ip_version":
+                    ipVersion = (int) metadata.readUnsigned();
+                    break;
+                case "binary_format_major_version":
+                    formatVersion = (int) metadata.readUnsigned();
+                    break;
+                default:
+                    metadata.skip();
+                    break;
+            }
+        }
+
+        if (formatVersion != 2) {
+            throw new IOException("Unsupported MaxMind DB format version " + formatVersion);
+        }
+        if (recordSize != 24 && recordSize != 28 && recordSize != 32) {
+            throw new IOException("Unsupported MaxMind DB record size " + recordSize);
+        }
+        if (ipVersion != 4 && ipVersion != 6) {
+            throw new IOException("Unsupported MaxMind DB IP version " + ipVersion);
+        }
+        if (nodeCount < 0 || nodeCount > Integer.MAX_VALUE / recordSize) {
+            throw new IOException("Invalid MaxMind DB node count " + nodeCount);
+        }
+
+        this.nodeCount = (int) nodeCount;
+        this.recordSize = recordSize;
+        this.ipVersion = ipVersion;
+        this.nodeByteSize = recordSize / 4;
+        this.dataSectionStart = this.nodeCount * this.nodeByteSize + DATA_SECTION_SEPARATOR_SIZE;
+
+        // IPv4 addresses live in ::/96 subtree of IPv6 databases
+        int node = 0;
+        if (ipVersion == 6) {
+            for (int depth = 0; depth < 96 && node < this.nodeCount; depth++) {
+                node = readRecord(node, 0);
+            }
+        }
+        this.ipv4Start = node;
+    }
+
+    static MmdbReader open(Path databaseFile, DatabaseFileMode fileMode) throws IOException {
+        if (fileMode == DatabaseFileMode.MEMORY) {
+            return new MmdbReader(ByteBuffer.wrap(Files.readAllBytes(databaseFile)));
+        }
+        try (FileChannel channel = FileChannel.open(databaseFile, StandardOpenOption.READ)) {
+            return new MmdbReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    int getIpVersion() {
+        return ipVersion;
+    }
+
+    /**
+     * @return Node where IPv4 address lookups start from, or a record if whole IPv4 space maps to a single record
+     */
+    int getIpv4Start() {
+        return ipv4Start;
+    }
+
+    /**
+     * Reads left (bit 0) or right (bit 1) record of a search tree node. Record value less than node count
+     * points to another node, value equal to node count means "not found" and anything bigger points to the
+     * data section.
+     */
+    int readRecord(int node, int bit) {
+        int offset = node * nodeByteSize;
+        switch (recordSize) {
+            case 24:
+                return readUnsigned24(offset + bit * 3);
+            case 28:
+                if (bit == 0) {
+                    return ((buffer.get(offset + 3) & 0xF0) << 20) | readUnsigned24(offset);
+                }
+                return ((buffer.get(offset + 3) & 0x0F) << 24) | readUnsigned24(offset + 4);
+            default:
+                return buffer.getInt(offset + bit * 4);
+        }
+    }
+
+    /**
+     * Decodes country ISO code of a data record
+     *
+     * @param record Tree record pointing to the data section
+     * @return Country index, or {@link CountryIndex#NONE} if record has no country
+     */
+    int readCountry(int record) {
+        if (record <= nodeCount) {
+            return CountryIndex.NONE;
+        }
+
+        int offset = record - nodeCount - DATA_SECTION_SEPARATOR_SIZE;
+        int slot = offset & COUNTRY_CACHE_MASK;
+        int tag = offset >>> COUNTRY_CACHE_BITS;
+        int entry = countryCache[slot];
+        if (entry >>> COUNTRY_BITS == tag && (entry & COUNTRY_MASK) != 0) {
+            return (entry & COUNTRY_MASK) - 1;
+        }
+
+        int country = decodeCountry(offset);
+        countryCache[slot] = tag << COUNTRY_BITS | (country + 1);
+        return country;
+    }
+
+    private int decodeCountry(int offset) {
+        Decoder decoder = new Decoder(dataSectionStart, offset);
+        if (!decoder.seekMapKey(KEY_COUNTRY) || !decoder.seekMapKey(KEY_ISO_CODE)) {
+            return CountryIndex.NONE;
+        }
+        return decoder.readCountryCode();
+    }
+
+    private int readUnsigned24(int offset) {
+        return ((buffer.get(offset) & 0xFF) << 16) | ((buffer.get(offset + 1) & 0xFF) << 8) | (buffer.get(offset + 2) & 0xFF);
+    }
+
+    private static int findMetadataStart(ByteBuffer buffer) throws IOException {
+        int limit = buffer.limit();
+        int lowest = Math.max(0, limit - METADATA_MAX_SIZE);
+        outer: for (int start = limit - METADATA_START_MARKER.length; start >= lowest; start--) {
+            for (int i = 0; i < METADATA_START_MARKER.length; i++) {
+                if (buffer.get(start + i) != METADATA_START_MARKER[i]) {
+                    continue outer;
+                }
+            }
+            return start + METADATA_START_MARKER.length;
+        }
+        throw new IOException("Could not find MaxMind DB metadata, is this a valid database?");
+    }
+
+    /**
+     * Sequential decoder over the data section or metadata. Pointers are relative to the section start
+     */
+    private final class Decoder {
+        private final int sectionStart;
+        private int position;
+        private int size;
+
+        Decoder(int sectionStart, int offset) {
+            this.sectionStart = sectionStart;
+            this.position = sectionStart + offset;
+        }
+
+        /**
+         * Reads control byte of the next value and leaves position at the payload. Sets {@link #size}
+         */
+        private int readControl() {
+            int control = buffer.get(position++) & 0xFF;
+            int type = control >>> 5;
+            if (type == TYPE_POINTER) {
+                size = (control >>> 3) & 0x3;
+                return type;
+            }
+            if (type == 0) {
+                type = 7 + (buffer.get(position++) & 0xFF);
+            }
+
+            size = control & 0x1F;
+            if (size == 29) {
+                size = 29 + (buffer.get(position++) & 0xFF);
+            } else if (size == 30) {
+                size = 285 + readBytes(2);
+            } else if (size == 31) {
+                size = 65821 + readBytes(3);
+            }
+            return type;
+        }
+
+        private int readBytes(int count) {
+            int value = 0;
+            for (int i = 0; i < count; i++) {
+                value = (value << 8) | (buffer.get(position++) & 0xFF);
+            }
+            return value;
+        }
+
+        private int readPointer() {
+            int control = buffer.get(position - 1) & 0xFF;
+            int high = control & 0x7;
+            switch (size) {
+                case 0:
+                    return (high << 8) | readBytes(1);
+                case 1:
+                    return ((high << 16) | readBytes(2)) + 2048;
+                case 2:
+                    return ((high << 24) | readBytes(3)) + 526336;
+                default:
+                    return readBytes(4);
+            }
+        }
+
+        /**
+         * Reads control byte of the next value, jumping to pointer target if needed
+         */
+        private int readResolvedControl() {
+            int type = readControl();
+            if (type == TYPE_POINTER) {
+                position = sectionStart + readPointer();
+                type = readControl();
+            }
+            return type;
+        }
+
+        int readMapSize() throws IOException {
+            if (readResolvedControl() != TYPE_MAP) {
+                throw new IOException("Expected a map in MaxMind DB");
+            }
+            return size;
+        }
+
+        String readString() throws IOException {
+            int saved = -1;
+            int type = readControl();
+            if (type == TYPE_POINTER) {
+                int target = sectionStart + readPointer();
+                saved = position;
+                position = target;
+                type = readControl();
+            }
+            if (type != TYPE_UTF8_STRING) {
+                throw new IOException("Expected a string in MaxMind DB");
+            }
+
+            byte[] bytes = new byte[size];
+            for (int i = 0; i < size; i++) {
+                bytes[i] = buffer.get(position + i);
+            }
+            position = saved >= 0 ? saved : position + size;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        long readUnsigned() throws IOException {
+            int saved = -1;
+            int type = readControl();
+            if (type == TYPE_POINTER) {
+                int target = sectionStart + readPointer();
+                saved = position;
+                position = target;
+                type = readControl();
+            }
+            if (type != TYPE_UINT16 && type != TYPE_UINT32 && type != TYPE_UINT64 && type != TYPE_UINT128) {
+                throw new IOException("Expected an unsigned integer in MaxMind DB");
+            }
+
+            long value = 0;
+            for (int i = 0; i < size; i++) {
+                value = (value << 8) | (buffer.get(position + i) & 0xFF);
+            }
+            position = saved >= 0 ? saved : position + size;
+            return value;
+        }
+
+        /**
+         * Skips the next value. Pointers are not followed
+         */
+        void skip() {
+            int type = readControl();
+            switch (type) {
+                case TYPE_POINTER:
+                    position += size + 1;
+                    break;
+                case TYPE_MAP:
+                    for (int i = 0, count = size * 2; i < count; i++) {
+                        skip();
+                    }
+                    break;
+                case TYPE_ARRAY:
+                    for (int i = 0, count = size; i < count; i++) {
+                        skip();
+                    }
+                    break;
+                case TYPE_BOOLEAN:
+                    break;
+                case TYPE_DOUBLE:
+                    position += 8;
+                    break;
+                case TYPE_FLOAT:
+                    position += 4;
+                    break;
+                default:
+                    position += size;
+                    break;
+            }
+        }
+
+        /**
+         * Expects a map as the next value, and positions the decoder at the value of given key
+         *
+         * @return Whether key was found
+         */
+        boolean seekMapKey(byte[] key) {
+            if (readResolvedControl() != TYPE_MAP) {
+                return false;
+            }
+
+            for (int i = 0, count = size; i < count; i++) {
+                if (keyEquals(key)) {
+                    return true;
+                }
+                skip();
+            }
+            return false;
+        }
+
+        private boolean keyEquals(byte[] key) {
+            int saved = -1;
+            int type = readControl();
+            if (type == TYPE_POINTER) {
+                int target = sectionStart + readPointer();
+                saved = position;
+                position = target;
+                type = readControl();
+            }
+
+            boolean equal = type == TYPE_UTF8_STRING && size == key.length;
+            for (int i = 0; equal && i < size; i++) {
+                equal = buffer.get(position + i) == key[i];
+            }
+            position = saved >= 0 ? saved : position + size;
+            return equal;
+        }
+
+        int readCountryCode() {
+            if (readResolvedControl() != TYPE_UTF8_STRING || size != 2) {
+                return CountryIndex.NONE;
+            }
+            return CountryIndex.indexOf(buffer.get(position), buffer.get(position + 1));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import eu.mikroskeem.geoip.GeoIPAPI;
+import eu.mikroskeem.geoip.LookupResult;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lookup results of connected players, looked up once per login.
+ * <p>
+ * Proxies start the lookup when a connection begins logging in, keyed by its remote address, and attach
+ * the result to the player's unique id once login succeeds. Results are dropped when player disconnects,
+ * and prefetched results of logins which never finish are dropped after a while.
+ * <p>
+ * Attached results are owned by the session they were attached for, such as the connection address or the
+ * player object, so that a late disconnect of a previous session can't drop the result of the current one.
+ *
+ * @author Mark Vainomaa
+ */
+public final class PlayerLookups {
+    private static final long PENDING_TIMEOUT = TimeUnit.MINUTES.toNanos(1);
+    private final GeoIPAPI api;
+    private final ConcurrentHashMap<InetSocketAddress, Pending> pending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, Session> players = new ConcurrentHashMap<>();
+    private final AtomicLong nextPendingSweep = new AtomicLong(System.nanoTime() + PENDING_TIMEOUT);
+
+    PlayerLookups(GeoIPAPI api) {
+        this.api = api;
+    }
+
+    /**
+     * Starts looking up a connection which is logging in
+     *
+     * @param connection Remote address of the connection
+     * @return Lookup result future
+     */
+    @NonNull
+    public CompletableFuture<@NonNull LookupResult> prefetch(@NonNull InetSocketAddress connection) {
+        long now = System.nanoTime();
+        sweepPending(now);
+
+        CompletableFuture<LookupResult> result = api.lookupAsync(connection.getAddress());
+        pending.put(connection, new Pending(result, now));
+        return result;
+    }
+
+    /**
+     * Drops abandoned prefetches, at most once per timeout so logins don't pay for walking all of them
+     */
+    private void sweepPending(long now) {
+        long next = nextPendingSweep.get();
+        if (now - next < 0 || !nextPendingSweep.compareAndSet(next, now + PENDING_TIMEOUT)) {
+            return;
+        }
+        pending.values().removeIf(entry -> now - entry.started > PENDING_TIMEOUT);
+    }
+
+    /**
+     * Attaches result prefetched for given connection to a player who has logged in. If nothing was
+     * prefetched, then the lookup is started now. Attached result is owned by the connection
+     *
+     * @param connection Remote address of the connection
+     * @param uniqueId Player unique id
+     */
+    public void bind(@NonNull InetSocketAddress connection, @NonNull UUID uniqueId) {
+        Pending entry = pending.remove(connection);
+        CompletableFuture<LookupResult> result = entry != null ? entry.result : api.lookupAsync(connection.getAddress());
+        players.put(uniqueId, new Session(result, connection));
+    }
+
+    /**
+     * Looks up given player and attaches the result to them. Result isn't owned by any session until
+     * {@link #claim(UUID, Object)} is called
+     *
+     * @param uniqueId Player unique id
+     * @param address Player address
+     */
+    public void attach(@NonNull UUID uniqueId, @NonNull InetAddress address) {
+        players.put(uniqueId, new Session(api.lookupAsync(address), null));
+    }
+
+    /**
+     * Makes given session the owner of a result attached with {@link #attach(UUID, InetAddress)}
+     *
+     * @param uniqueId Player unique id
+     * @param owner Session owning the result
+     */
+    public void claim(@NonNull UUID uniqueId, @NonNull Object owner) {
+        players.computeIfPresent(uniqueId, (key, session) -> session.owner == null ? new Session(session.result, owner) : session);
+    }
+
+    /**
+     * Drops result attached to given player, if it's owned by given session
+     *
+     * @param uniqueId Player unique id
+     * @param owner Session owning the result, or null to drop only an unclaimed result
+     */
+    public void remove(@NonNull UUID uniqueId, @Nullable Object owner) {
+        players.computeIfPresent(uniqueId, (key, session) -> Objects.equals(session.owner, owner) ? null : session);
+    }
+
+    /**
+     * Gets result attached to given player
+     *
+     * @param uniqueId Player unique id
+     * @return Lookup result, or null if player is not known or lookup hasn't finished yet
+     */
+    @Nullable
+    public LookupResult get(@NonNull UUID uniqueId) {
+        Session session = players.get(uniqueId);
+        if (session == null || !session.result.isDone() || session.result.isCompletedExceptionally()) {
+            return null;
+        }
+        return session.result.join();
+    }
+
+    private static final class Session {
+        private final CompletableFuture<LookupResult> result;
+        private final @Nullable Object owner;
+
+        Session(CompletableFuture<LookupResult> result, @Nullable Object owner) {
+            this.result = result;
+            this.owner = owner;
+        }
+    }
+
+    private static final class Pending {
+        private final CompletableFuture<LookupResult> result;
+        private final long started;
+
+        Pending(CompletableFuture<LookupResult> result, long started) {
+            this.result = result;
+            this.started = started;
+        }
+    }
+}
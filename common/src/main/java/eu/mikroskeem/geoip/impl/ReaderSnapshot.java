@@ -0,0 +1,95 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable, reference counted holder of a {@link LookupEngine}.
+ * <p>
+ * The snapshot starts with a single reference owned by whoever publishes it. Lookups pin the snapshot
+ * with {@link #retain()} and unpin it with {@link #release()}, and the engine gets closed once the
+ * last reference is gone.
+ * <p>
+ * Every snapshot has an epoch, which tags lookup results cached from it.
+ *
+ * @author Mark Vainomaa
+ */
+final class ReaderSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(ReaderSnapshot.class);
+    private final LookupEngine engine;
+    private final int epoch;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    ReaderSnapshot(LookupEngine engine, int epoch) {
+        this.engine = engine;
+        this.epoch = epoch;
+    }
+
+    LookupEngine getEngine() {
+        return engine;
+    }
+
+    int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Pins this snapshot
+     *
+     * @return Whether pinning succeeded. Fails only when snapshot has been already retired
+     */
+    boolean retain() {
+        for (;;) {
+            int current = references.get();
+            if (current == 0) {
+                return false;
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Unpins this snapshot, and closes the underlying engine if this was the last reference
+     */
+    void release() {
+        int remaining = references.decrementAndGet();
+        if (remaining == 0) {
+            try {
+                engine.close();
+            } catch (Exception e) {
+                logger.warn("Failed to close database lookup engine", e);
+            }
+        } else if (remaining < 0) {
+            throw new IllegalStateException("Database reader snapshot was released too many times");
+        }
+    }
+}
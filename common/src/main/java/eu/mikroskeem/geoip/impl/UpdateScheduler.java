@@ -0,0 +1,129 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules database update checks. Every check schedules the next one: regular checks are spread with random
+ * jitter, so instances started at the same time don't all check at the same instant, and failed checks are
+ * retried with exponential backoff, capped at the regular interval.
+ *
+ * @author Mark Vainomaa
+ */
+final class UpdateScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(UpdateScheduler.class);
+    private final ScheduledExecutorService executor;
+    private final DatabaseUpdaterTask task;
+    private final long intervalMillis;
+    private final long jitterMillis;
+    private final long retryDelayMillis;
+    /* Only touched on the executor thread */
+    private int failures = 0;
+    private ScheduledFuture<?> nextCheck;
+
+    UpdateScheduler(ScheduledExecutorService executor, DatabaseUpdaterTask task, long interval, TimeUnit timeUnit,
+                    GeoIPAPISettings settings) {
+        this.executor = executor;
+        this.task = task;
+        this.intervalMillis = Math.max(1, timeUnit.toMillis(interval));
+        this.jitterMillis = settings.getUpdateCheckJitterUnit().toMillis(settings.getUpdateCheckJitter());
+        this.retryDelayMillis = Math.max(1, settings.getUpdateRetryDelayUnit().toMillis(settings.getUpdateRetryDelay()));
+    }
+
+    void start() {
+        schedule(random(Math.min(jitterMillis, intervalMillis)));
+    }
+
+    /**
+     * Runs update check right away. Next regular check is scheduled relative to this one
+     *
+     * @return Future completing with check result
+     */
+    CompletableFuture<UpdateCheckResult> checkNow() {
+        CompletableFuture<UpdateCheckResult> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> future.complete(runCheck()));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private UpdateCheckResult runCheck() {
+        synchronized (this) {
+            if (nextCheck != null) {
+                nextCheck.cancel(false);
+            }
+        }
+
+        UpdateCheckResult result;
+        try {
+            result = task.check();
+        } catch (RuntimeException e) {
+            logger.warn("Database update check failed", e);
+            result = UpdateCheckResult.FAILED;
+        }
+
+        long delay;
+        if (result == UpdateCheckResult.FAILED) {
+            failures++;
+            long backoff = retryDelayMillis;
+            for (int i = 1; i < failures && backoff < intervalMillis; i++) {
+                backoff *= 2;
+            }
+            // Clamped after adding the jitter, so retries never wait longer than a regular check
+            delay = Math.min(backoff + random(backoff / 2), intervalMillis);
+            logger.info("Retrying database update check in {} minutes", TimeUnit.MILLISECONDS.toMinutes(delay));
+        } else {
+            failures = 0;
+            delay = intervalMillis + random(jitterMillis);
+        }
+        schedule(delay);
+        return result;
+    }
+
+    private synchronized void schedule(long delayMillis) {
+        try {
+            nextCheck = executor.schedule(this::runCheck, delayMillis, TimeUnit.MILLISECONDS);
+            logger.debug("Next database update check in {} minutes", TimeUnit.MILLISECONDS.toMinutes(delayMillis));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    private static long random(long bound) {
+        return bound > 0 ? ThreadLocalRandom.current().nextLong(bound + 1) : 0;
+    }
+}
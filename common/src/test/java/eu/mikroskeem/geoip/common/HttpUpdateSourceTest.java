@@ -0,0 +1,140 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.common;
+
+import eu.mikroskeem.geoip.fixtures.LocalUpdateServer;
+import eu.mikroskeem.geoip.fixtures.SyntheticDatabaseGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Mark Vainomaa
+ */
+public class HttpUpdateSourceTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LocalUpdateServer server;
+    private Path firstDatabase;
+    private Path secondDatabase;
+    private Path stateFile;
+    private Path target;
+
+    @Before
+    public void setUp() throws Exception {
+        server = LocalUpdateServer.start();
+        firstDatabase = temporaryFolder.newFile().toPath();
+        secondDatabase = temporaryFolder.newFile().toPath();
+        new SyntheticDatabaseGenerator().setSeed(1).setNetworkCount(1000).write(firstDatabase);
+        new SyntheticDatabaseGenerator().setSeed(2).setNetworkCount(1000).write(secondDatabase);
+        stateFile = temporaryFolder.getRoot().toPath().resolve(HttpUpdateSource.STATE_FILE_NAME);
+        target = temporaryFolder.getRoot().toPath().resolve("GeoLite2-Country.mmdb");
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testInitialDownload() throws Exception {
+        String checksum = server.publish(firstDatabase);
+        assertEquals(checksum, createSource().fetch(null, target));
+        assertArrayEquals(Files.readAllBytes(firstDatabase), Files.readAllBytes(target));
+        assertEquals(1, server.getArchiveDownloads());
+    }
+
+    @Test
+    public void testUnchangedArchiveIsNotDownloadedAgain() throws Exception {
+        String checksum = server.publish(firstDatabase);
+        HttpUpdateSource source = createSource();
+        source.fetch(null, target);
+        Files.delete(target);
+
+        // Validators remembered from the download make this a conditional request
+        assertNull(source.fetch(checksum, target));
+        assertFalse(Files.exists(target));
+        assertEquals(1, server.getArchiveDownloads());
+        assertEquals(1, server.getNotModifiedResponses());
+    }
+
+    @Test
+    public void testValidatorsArePersisted() throws Exception {
+        String checksum = server.publish(firstDatabase);
+        createSource().fetch(null, target);
+        int checksumRequests = server.getChecksumRequests();
+
+        assertNull(createSource().fetch(checksum, target));
+        assertEquals(1, server.getArchiveDownloads());
+        assertEquals(1, server.getNotModifiedResponses());
+        assertEquals(checksumRequests, server.getChecksumRequests());
+    }
+
+    @Test
+    public void testUnchangedArchiveWithoutValidators() throws Exception {
+        String checksum = server.publish(firstDatabase);
+        HttpUpdateSource source = new HttpUpdateSource(server.getArchiveUrl(), server.getChecksumUrl(), true, null);
+
+        // Published checksum is compared first, and validators are picked up with a HEAD request
+        assertNull(source.fetch(checksum, target));
+        assertEquals(0, server.getArchiveDownloads());
+        assertEquals(1, server.getHeadRequests());
+
+        assertNull(source.fetch(checksum, target));
+        assertEquals(0, server.getArchiveDownloads());
+        assertEquals(1, server.getNotModifiedResponses());
+    }
+
+    @Test
+    public void testChangedArchiveIsDownloaded() throws Exception {
+        String firstChecksum = server.publish(firstDatabase);
+        HttpUpdateSource source = createSource();
+        source.fetch(null, target);
+
+        String secondChecksum = server.publish(secondDatabase);
+        assertEquals(secondChecksum, source.fetch(firstChecksum, target));
+        assertArrayEquals(Files.readAllBytes(secondDatabase), Files.readAllBytes(target));
+        assertEquals(2, server.getArchiveDownloads());
+
+        assertNull(source.fetch(secondChecksum, target));
+        assertEquals(2, server.getArchiveDownloads());
+    }
+
+    private HttpUpdateSource createSource() {
+        return new HttpUpdateSource(server.getArchiveUrl(), server.getChecksumUrl(), true, stateFile);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Mark Vainomaa
+ */
+public class AddressParserTest {
+    private final AddressParser parser = new AddressParser();
+
+    @Test
+    public void testValidIpv4() throws Exception {
+        assertParses("0.0.0.0", "0.0.0.0");
+        assertParses("1.2.3.4", "1.2.3.4");
+        assertParses("255.255.255.255", "255.255.255.255");
+        assertParses("192.168.001.010", "192.168.1.10");
+    }
+
+    @Test
+    public void testValidIpv6() throws Exception {
+        assertParses("::", "::");
+        assertParses("::1", "::1");
+        assertParses("1::", "1::");
+        assertParses("2001:db8::8a2e:370:7334", "2001:db8::8a2e:370:7334");
+        assertParses("2001:0DB8:0000:0000:0000:FF00:0042:8329", "2001:db8::ff00:42:8329");
+        assertParses("1:2:3:4:5:6:7:8", "1:2:3:4:5:6:7:8");
+        assertParses("1:2:3:4:5:6:7::", "1:2:3:4:5:6:7:0");
+        assertParses("::2:3:4:5:6:7:8", "0:2:3:4:5:6:7:8");
+        assertParses("[2001:db8::1]", "2001:db8::1");
+        assertParses("fe80::1%eth0", "fe80::1");
+        assertParses("[fe80::1%1]", "fe80::1");
+        assertParses("::ffff:1.2.3.4", "::ffff:1.2.3.4");
+        assertParses("64:ff9b::192.0.2.33", "64:ff9b::c000:221");
+        assertParses("1:2:3:4:5:6:1.2.3.4", "1:2:3:4:5:6:102:304");
+    }
+
+    @Test
+    public void testInvalidIpv4() {
+        assertRejected("");
+        assertRejected("1.2.3");
+        assertRejected("1.2.3.4.5");
+        assertRejected("1.2.3.256");
+        assertRejected("1.2.3.0004");
+        assertRejected("1..2.3");
+        assertRejected("1.2.3.4.");
+        assertRejected(".1.2.3.4");
+        assertRejected("1.2.3.-4");
+        assertRejected(" 1.2.3.4");
+        assertRejected("[1.2.3.4]");
+        assertRejected("[]");
+        assertRejected("localhost");
+        assertRejected("\u0661.\u0662.\u0663.\u0664"); // Arabic-Indic digits
+        assertRejected("\uff11.2.3.4"); // Fullwidth digit
+    }
+
+    @Test
+    public void testInvalidIpv6() {
+        assertRejected(":");
+        assertRejected(":::");
+        assertRejected("1:::2");
+        assertRejected("1::2::3");
+        assertRejected(":1:2:3:4:5:6:7");
+        assertRejected("1:2:3:4:5:6:7:");
+        assertRejected("1:2:3:4:5:6:7");
+        assertRejected("1:2:3:4:5:6:7:8:9");
+        assertRejected("1:2:3:4:5:6:7:8::");
+        assertRejected("12345::");
+        assertRejected("g::");
+        assertRejected("[::1");
+        assertRejected("::1]");
+        assertRejected("1:2:3:4:5:6:7:1.2.3.4");
+        assertRejected("::1.2.3.4:1");
+        assertRejected("::1.2.3");
+        assertRejected("::\u0661"); // Arabic-Indic digit
+        assertRejected("\uff21::"); // Fullwidth letter A
+    }
+
+    private void assertParses(String literal, String expected) throws Exception {
+        assertTrue("Expected '" + literal + "' to parse", parser.parse(literal));
+        byte[] address = InetAddress.getByName(expected).getAddress();
+        if (address.length == 4) {
+            assertEquals(0L, parser.getHigh());
+            assertEquals(Addresses.ipv4ToLow(ByteBuffer.wrap(address).getInt()), parser.getLow());
+        } else {
+            assertEquals(Addresses.readLong(address, 0), parser.getHigh());
+            assertEquals(Addresses.readLong(address, 8), parser.getLow());
+        }
+    }
+
+    private void assertRejected(String literal) {
+        assertFalse("Expected '" + literal + "' to be rejected", parser.parse(literal));
+    }
+}
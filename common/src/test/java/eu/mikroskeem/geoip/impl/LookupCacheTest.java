@@ -0,0 +1,145 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Mark Vainomaa
+ */
+public class LookupCacheTest {
+    private static final int ADDRESS = 0x01020304;
+    private static final int OTHER_ADDRESS_IN_BLOCK = 0x010203FE;
+
+    @Test
+    public void testExactEntry() {
+        LookupCache cache = new LookupCache(1024);
+        int result = PackedResult.pack(CountryIndex.indexOf("EE"), 128);
+        assertEquals(LookupCache.MISS, cache.get(ADDRESS));
+
+        cache.put(ADDRESS, result, 0);
+        assertEquals(result, cache.get(ADDRESS));
+        assertEquals(LookupCache.MISS, cache.get(OTHER_ADDRESS_IN_BLOCK));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testBlockEntry() {
+        LookupCache cache = new LookupCache(1024);
+
+        // IPv4 /16 covers the whole /24 around the address
+        int result = PackedResult.pack(CountryIndex.indexOf("EE"), 96 + 16);
+        cache.put(ADDRESS, result, 0);
+        assertEquals(result, cache.get(ADDRESS));
+        assertEquals(result, cache.get(OTHER_ADDRESS_IN_BLOCK));
+        assertEquals(LookupCache.MISS, cache.get(0x01020404));
+
+        // IPv6 /48 covers the whole /64 around the address
+        long high = 0x20010DB800010002L;
+        int ipv6Result = PackedResult.pack(CountryIndex.indexOf("FI"), 48);
+        cache.put(high, 1L, ipv6Result, 0);
+        assertEquals(ipv6Result, cache.get(high, 0xFFFFL));
+        assertEquals(LookupCache.MISS, cache.get(high + 1, 1L));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testNarrowNetworkIsNotBlockCached() {
+        LookupCache cache = new LookupCache(1024);
+        int result = PackedResult.pack(CountryIndex.indexOf("EE"), 96 + 25);
+        cache.put(ADDRESS, result, 0);
+        assertEquals(result, cache.get(ADDRESS));
+        assertEquals(LookupCache.MISS, cache.get(OTHER_ADDRESS_IN_BLOCK));
+    }
+
+    @Test
+    public void testResultsOfOlderEpochAreDropped() {
+        LookupCache cache = new LookupCache(1024);
+        cache.setEpoch(2);
+        cache.put(ADDRESS, PackedResult.pack(CountryIndex.indexOf("EE"), 128), 1);
+        assertEquals(LookupCache.MISS, cache.get(ADDRESS));
+    }
+
+    @Test
+    public void testStaleEntriesAreServedUntilRevalidated() throws Exception {
+        LookupCache cache = new LookupCache(1024);
+        int oldResult = PackedResult.pack(CountryIndex.indexOf("EE"), 128);
+        int newResult = PackedResult.pack(CountryIndex.indexOf("FI"), 128);
+        cache.put(ADDRESS, oldResult, 0);
+
+        cache.setEpoch(1);
+        assertEquals(oldResult, cache.get(ADDRESS));
+
+        int revalidated = cache.revalidate(1, (high, low) -> {
+            assertEquals(Addresses.ipv4ToLow(ADDRESS), low);
+            return newResult;
+        });
+        assertEquals(1, revalidated);
+        assertEquals(newResult, cache.get(ADDRESS));
+        assertEquals(0, cache.revalidate(1, (high, low) -> newResult));
+    }
+
+    @Test
+    public void testFreshBlockEntryWinsOverStaleExactEntry() throws Exception {
+        LookupCache cache = new LookupCache(1024);
+        cache.put(ADDRESS, PackedResult.pack(CountryIndex.indexOf("EE"), 128), 0);
+
+        cache.setEpoch(1);
+        int blockResult = PackedResult.pack(CountryIndex.indexOf("FI"), 96 + 16);
+        cache.put(OTHER_ADDRESS_IN_BLOCK, blockResult, 1);
+        assertEquals(blockResult, cache.get(ADDRESS));
+    }
+
+    @Test
+    public void testRevalidationStopsWhenEpochMovesOn() throws Exception {
+        LookupCache cache = new LookupCache(1024);
+        for (int i = 0; i < 100; i++) {
+            cache.put(ADDRESS + (i << 8), PackedResult.pack(CountryIndex.indexOf("EE"), 128), 0);
+        }
+
+        cache.setEpoch(1);
+        int revalidated = cache.revalidate(1, (high, low) -> {
+            cache.setEpoch(2);
+            return PackedResult.pack(CountryIndex.indexOf("FI"), 128);
+        });
+        assertEquals(1, revalidated);
+    }
+
+    @Test
+    public void testCapacityIsUpperBound() {
+        for (int capacity : new int[]{1, 5, 8, 100, 1000, 70000}) {
+            LookupCache cache = new LookupCache(capacity);
+            assertTrue("Capacity " + cache.getCapacity() + " exceeds " + capacity, cache.getCapacity() <= capacity);
+            for (int i = 0; i < capacity * 2; i++) {
+                cache.put(i << 8, PackedResult.pack(CountryIndex.indexOf("EE"), 128), 0);
+            }
+            assertTrue(cache.size() <= capacity);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import com.maxmind.geoip2.DatabaseReader;
+import com.maxmind.geoip2.exception.AddressNotFoundException;
+import eu.mikroskeem.geoip.fixtures.SyntheticDatabaseGenerator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks every lookup engine against MaxMind's own reader on generated databases
+ *
+ * @author Mark Vainomaa
+ */
+public class LookupEngineTest {
+    private static final int NETWORK_COUNT = 5000;
+    private static final int SAMPLE_SIZE = 20000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testEnginesMatchDatabaseReader() throws Exception {
+        for (int recordSize : new int[]{24, 28, 32}) {
+            Path databaseFile = temporaryFolder.newFile().toPath();
+            new SyntheticDatabaseGenerator()
+                    .setSeed(recordSize)
+                    .setNetworkCount(NETWORK_COUNT)
+                    .setRecordSize(recordSize)
+                    .write(databaseFile);
+
+            try (DatabaseReader reader = new DatabaseReader.Builder(databaseFile.toFile()).build()) {
+                for (LookupEngineType engineType : LookupEngineType.values()) {
+                    try (LookupEngine engine = open(engineType, databaseFile)) {
+                        assertMatches(engineType + " with " + recordSize + " bit records", reader, engine, new Random(recordSize));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDirectAndMaxMindPrefixesMatch() throws Exception {
+        Path databaseFile = temporaryFolder.newFile().toPath();
+        new SyntheticDatabaseGenerator().setNetworkCount(NETWORK_COUNT).write(databaseFile);
+
+        try (LookupEngine direct = open(LookupEngineType.DIRECT, databaseFile);
+             LookupEngine maxMind = open(LookupEngineType.MAXMIND, databaseFile)) {
+            Random random = new Random(0);
+            for (int i = 0; i < SAMPLE_SIZE; i++) {
+                InetAddress address = randomAddress(random);
+                int result = direct.lookup(address);
+                if (PackedResult.country(result) != CountryIndex.NONE) {
+                    assertEquals(address.toString(), result, maxMind.lookup(address));
+                }
+            }
+        }
+    }
+
+    private static LookupEngine open(LookupEngineType engineType, Path databaseFile) throws Exception {
+        switch (engineType) {
+            case DIRECT:
+                return new DirectLookupEngine(databaseFile, DatabaseFileMode.MEMORY_MAPPED);
+            case COMPILED:
+                return CompiledLookupEngine.compile(databaseFile, DatabaseFileMode.MEMORY_MAPPED);
+            case MAXMIND:
+            default:
+                return new MaxMindLookupEngine(databaseFile, DatabaseFileMode.MEMORY_MAPPED, 0);
+        }
+    }
+
+    private static void assertMatches(String message, DatabaseReader reader, LookupEngine engine, Random random) throws Exception {
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            InetAddress address = randomAddress(random);
+            String expected = country(reader, address);
+            int result = engine.lookup(address);
+            assertEquals(message + ", " + address, expected, CountryIndex.codeOf(PackedResult.country(result)));
+            if (expected == null) {
+                continue;
+            }
+
+            // Every address in the reported network must belong to the same country
+            int prefixLength = PackedResult.prefixLength(result);
+            byte[] raw = address.getAddress();
+            long high = address instanceof Inet4Address ? 0L : Addresses.readLong(raw, 0);
+            long low = address instanceof Inet4Address ? Addresses.ipv4ToLow(address.hashCode()) : Addresses.readLong(raw, 8);
+            long networkHigh = Addresses.maskHigh(high, prefixLength);
+            long networkLow = Addresses.maskLow(low, prefixLength);
+            assertEquals(message + ", first address of network around " + address, expected,
+                    country(reader, Addresses.toInetAddress(networkHigh, networkLow)));
+            assertEquals(message + ", last address of network around " + address, expected,
+                    country(reader, Addresses.toInetAddress(networkHigh | ~Addresses.maskHigh(-1L, prefixLength),
+                            networkLow | ~Addresses.maskLow(-1L, prefixLength))));
+            assertEquals(message + ", " + address, result, engine.lookup(high, low));
+        }
+    }
+
+    private static InetAddress randomAddress(Random random) throws Exception {
+        // Generated networks take up a fraction of 1.0.0.0 - 223.255.255.255 and 2000::/3
+        byte[] raw;
+        if (random.nextInt(4) == 0) {
+            raw = new byte[16];
+            random.nextBytes(raw);
+            raw[0] = (byte) (0x20 | (raw[0] & 0x1F));
+        } else {
+            raw = new byte[4];
+            random.nextBytes(raw);
+            raw[0] = (byte) (1 + random.nextInt(223));
+        }
+        return InetAddress.getByAddress(raw);
+    }
+
+    private static String country(DatabaseReader reader, InetAddress address) throws Exception {
+        try {
+            return reader.country(address).getCountry().getIsoCode();
+        } catch (AddressNotFoundException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.impl;
+
+import eu.mikroskeem.geoip.fixtures.MmdbFixtureWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Mark Vainomaa
+ */
+public class MmdbReaderTest {
+    private static final long DOCUMENTATION_PREFIX = 0x20010DB800000000L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testRecordSizes() throws Exception {
+        for (int recordSize : new int[]{24, 28, 32}) {
+            for (DatabaseFileMode fileMode : DatabaseFileMode.values()) {
+                MmdbFixtureWriter writer = createWriter();
+                Path databaseFile = temporaryFolder.newFile().toPath();
+                writer.write(databaseFile, recordSize);
+
+                MmdbReader reader = MmdbReader.open(databaseFile, fileMode);
+                assertEquals(writer.getNodeCount(), reader.getNodeCount());
+                assertEquals(6, reader.getIpVersion());
+                assertLookups(new DirectLookupEngine(databaseFile, fileMode));
+            }
+        }
+    }
+
+    private static MmdbFixtureWriter createWriter() {
+        MmdbFixtureWriter writer = new MmdbFixtureWriter();
+        writer.insertIpv4(0x0A000000, 8, "EE");
+        writer.insertIpv4(0x0A010000, 16, "FI"); // Takes precedence over the /8
+        writer.insertIpv4(0xC0A80100, 24, "LV");
+        writer.insert(DOCUMENTATION_PREFIX, 0L, 32, "SE");
+        return writer;
+    }
+
+    private static void assertLookups(LookupEngine engine) throws Exception {
+        // Inserting the /16 split the /8, so the rest of it is covered by narrower networks
+        assertResult("EE", 96 + 15, engine.lookup(0L, Addresses.ipv4ToLow(0x0A020304)));
+        assertResult("EE", 96 + 9, engine.lookup(0L, Addresses.ipv4ToLow(0x0A800001)));
+        assertResult("FI", 96 + 16, engine.lookup(0L, Addresses.ipv4ToLow(0x0A010203)));
+        assertResult("LV", 96 + 24, engine.lookup(0L, Addresses.ipv4ToLow(0xC0A801FF)));
+        assertResult("SE", 32, engine.lookup(DOCUMENTATION_PREFIX | 0xFFFFL, 1L));
+        assertEquals(CountryIndex.NONE, PackedResult.country(engine.lookup(0L, Addresses.ipv4ToLow(0x0B000001))));
+        assertEquals(CountryIndex.NONE, PackedResult.country(engine.lookup(DOCUMENTATION_PREFIX + (1L << 32), 1L)));
+    }
+
+    private static void assertResult(String country, int prefixLength, int result) {
+        assertEquals(country, CountryIndex.codeOf(PackedResult.country(result)));
+        assertEquals(prefixLength, PackedResult.prefixLength(result));
+    }
+}
@@ -0,0 +1,11 @@
+plugins {
+    application
+}
+
+dependencies {
+    implementation("org.apache.commons:commons-compress:${rootProject.extra["commonsCompressVersion"]}")
+}
+
+application {
+    mainClassName = "eu.mikroskeem.geoip.fixtures.SyntheticDatabaseGenerator"
+}
@@ -0,0 +1,264 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.fixtures;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local stand-in for the MaxMind download endpoint, serving a published database as tar.gz archive along with
+ * its md5 checksum. Archive requests honour {@code If-None-Match} and {@code If-Modified-Since}, and every kind
+ * of request is counted, so update checks can be exercised and timed offline.
+ *
+ * @author Mark Vainomaa
+ */
+public final class LocalUpdateServer implements AutoCloseable {
+    /* Paths archive and its checksum are served at */
+    public static final String ARCHIVE_PATH = "/GeoLite2-Country.tar.gz";
+    public static final String CHECKSUM_PATH = ARCHIVE_PATH + ".md5";
+
+    private final HttpServer server;
+    private final AtomicInteger archiveDownloads = new AtomicInteger();
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();
+    private final AtomicInteger headRequests = new AtomicInteger();
+    private final AtomicInteger checksumRequests = new AtomicInteger();
+    private volatile Archive archive;
+    private volatile long responseDelayMillis = 0;
+
+    private LocalUpdateServer(HttpServer server) {
+        this.server = server;
+        server.createContext(ARCHIVE_PATH, this::handle);
+    }
+
+    /**
+     * Starts the server on a free loopback port
+     *
+     * @return Started server
+     * @throws IOException When binding fails
+     */
+    public static LocalUpdateServer start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        LocalUpdateServer updateServer = new LocalUpdateServer(server);
+        server.start();
+        return updateServer;
+    }
+
+    /**
+     * Packs given database into an archive and starts serving it
+     *
+     * @param databaseFile Database file
+     * @return Archive md5 checksum
+     * @throws IOException When reading database fails
+     */
+    public String publish(Path databaseFile) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GZIPOutputStream(bytes))) {
+            TarArchiveEntry entry = new TarArchiveEntry("GeoLite2-Country_19700101/GeoLite2-Country.mmdb");
+            entry.setSize(Files.size(databaseFile));
+            tar.putArchiveEntry(entry);
+            Files.copy(databaseFile, tar);
+            tar.closeArchiveEntry();
+        }
+
+        // Last-Modified has a second resolution, so make sure every archive gets a distinct one
+        Archive previous = this.archive;
+        long modified = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        if (previous != null && modified <= previous.modifiedSeconds) {
+            modified = previous.modifiedSeconds + 1;
+        }
+        Archive archive = new Archive(bytes.toByteArray(), modified);
+        this.archive = archive;
+        return archive.checksum;
+    }
+
+    /**
+     * Sets delay applied to every response, to simulate a remote server
+     *
+     * @param delay Delay
+     * @param unit Delay unit
+     */
+    public void setResponseDelay(long delay, TimeUnit unit) {
+        this.responseDelayMillis = unit.toMillis(delay);
+    }
+
+    public URL getArchiveUrl() {
+        return url(ARCHIVE_PATH);
+    }
+
+    public URL getChecksumUrl() {
+        return url(CHECKSUM_PATH);
+    }
+
+    public int getArchiveDownloads() {
+        return archiveDownloads.get();
+    }
+
+    public int getNotModifiedResponses() {
+        return notModifiedResponses.get();
+    }
+
+    public int getHeadRequests() {
+        return headRequests.get();
+    }
+
+    public int getChecksumRequests() {
+        return checksumRequests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (responseDelayMillis > 0) {
+                Thread.sleep(responseDelayMillis);
+            }
+
+            Archive archive = this.archive;
+            String path = exchange.getRequestURI().getPath();
+            if (archive == null || !(path.equals(ARCHIVE_PATH) || path.equals(CHECKSUM_PATH))) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            if (path.equals(CHECKSUM_PATH)) {
+                checksumRequests.incrementAndGet();
+                send(exchange, archive.checksum.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+
+            exchange.getResponseHeaders().set("ETag", archive.entityTag);
+            exchange.getResponseHeaders().set("Last-Modified", archive.lastModified);
+            if (isNotModified(exchange, archive)) {
+                notModifiedResponses.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else if (exchange.getRequestMethod().equals("HEAD")) {
+                headRequests.incrementAndGet();
+                exchange.sendResponseHeaders(200, -1);
+            } else {
+                archiveDownloads.incrementAndGet();
+                send(exchange, archive.bytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static boolean isNotModified(HttpExchange exchange, Archive archive) {
+        // If-None-Match takes precedence, as per RFC 7232
+        String entityTag = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (entityTag != null) {
+            return entityTag.equals(archive.entityTag);
+        }
+        String modifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        if (modifiedSince != null) {
+            try {
+                return TimeUnit.MILLISECONDS.toSeconds(httpDateFormat().parse(modifiedSince).getTime()) >= archive.modifiedSeconds;
+            } catch (ParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static void send(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(200, exchange.getRequestMethod().equals("HEAD") ? -1 : body.length);
+        if (!exchange.getRequestMethod().equals("HEAD")) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private URL url(String path) {
+        try {
+            return new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), path);
+        } catch (MalformedURLException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static SimpleDateFormat httpDateFormat() {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
+
+    private static final class Archive {
+        private final byte[] bytes;
+        private final String checksum;
+        private final String entityTag;
+        private final long modifiedSeconds;
+        private final String lastModified;
+
+        Archive(byte[] bytes, long modifiedSeconds) {
+            this.bytes = bytes;
+            this.checksum = md5(bytes);
+            this.entityTag = "\"" + checksum + "\"";
+            this.modifiedSeconds = modifiedSeconds;
+            this.lastModified = httpDateFormat().format(new Date(TimeUnit.SECONDS.toMillis(modifiedSeconds)));
+        }
+
+        private static String md5(byte[] bytes) {
+            try {
+                StringBuilder hex = new StringBuilder();
+                for (byte b : MessageDigest.getInstance("MD5").digest(bytes)) {
+                    hex.append(String.format("%02x", b));
+                }
+                return hex.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
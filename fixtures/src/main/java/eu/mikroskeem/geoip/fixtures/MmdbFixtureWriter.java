@@ -0,0 +1,285 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.fixtures;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes GeoLite2-Country compatible MaxMind DB files, containing just what the lookup engines read.
+ * <p>
+ * Networks are inserted into an IPv6 search tree, IPv4 networks under {@code ::/96}. Networks inserted later
+ * take precedence over earlier ones they overlap with.
+ *
+ * @author Mark Vainomaa
+ */
+public final class MmdbFixtureWriter {
+    /* MaxMind DB data types used here */
+    private static final int TYPE_STRING = 2;
+    private static final int TYPE_UINT16 = 5;
+    private static final int TYPE_UINT32 = 6;
+    private static final int TYPE_MAP = 7;
+    private static final int TYPE_UINT64 = 9;
+    private static final int TYPE_ARRAY = 11;
+    private static final byte[] METADATA_MARKER_NAME = "MaxMind.com".getBytes(StandardCharsets.US_ASCII);
+
+    /* Child pointers: node index when non-negative, EMPTY, or -(2 + country index) for data records */
+    private static final int EMPTY = -1;
+    private int[] left = new int[1024];
+    private int[] right = new int[1024];
+    private int nodeCount = 1;
+    private final List<String> countries = new ArrayList<>();
+    private final Map<String, Integer> countryIndexes = new HashMap<>();
+
+    public MmdbFixtureWriter() {
+        left[0] = EMPTY;
+        right[0] = EMPTY;
+    }
+
+    /**
+     * Inserts an IPv4 network
+     *
+     * @param address Network address
+     * @param prefixLength Network prefix length, 1-32
+     * @param country Country ISO code
+     */
+    public void insertIpv4(int address, int prefixLength, String country) {
+        insert(0L, address & 0xFFFFFFFFL, prefixLength + 96, country);
+    }
+
+    /**
+     * Inserts an IPv6 network
+     *
+     * @param high Upper 64 bits of the network address
+     * @param low Lower 64 bits of the network address
+     * @param prefixLength Network prefix length, 1-128
+     * @param country Country ISO code
+     */
+    public void insert(long high, long low, int prefixLength, String country) {
+        if (prefixLength < 1 || prefixLength > 128) {
+            throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
+        }
+        int record = -(2 + countryIndexes.computeIfAbsent(country, c -> {
+            countries.add(c);
+            return countries.size() - 1;
+        }));
+
+        int node = 0;
+        for (int depth = 0; depth < prefixLength - 1; depth++) {
+            boolean set = bit(high, low, depth);
+            int child = set ? right[node] : left[node];
+            if (child < 0) {
+                // Split empty space or a wider network into two halves
+                int created = createNode(child);
+                if (set) {
+                    right[node] = created;
+                } else {
+                    left[node] = created;
+                }
+                child = created;
+            }
+            node = child;
+        }
+
+        if (bit(high, low, prefixLength - 1)) {
+            right[node] = record;
+        } else {
+            left[node] = record;
+        }
+    }
+
+    /**
+     * Gets amount of search tree nodes
+     *
+     * @return Node count
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Writes the database
+     *
+     * @param file Target file
+     * @param recordSize Search tree record size, either 24, 28 or 32
+     * @throws IOException When writing fails
+     */
+    public void write(Path file, int recordSize) throws IOException {
+        if (recordSize != 24 && recordSize != 28 && recordSize != 32) {
+            throw new IllegalArgumentException("Invalid record size: " + recordSize);
+        }
+
+        // Data section holds one record per country
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int[] dataOffsets = new int[countries.size()];
+        for (int i = 0; i < countries.size(); i++) {
+            String country = countries.get(i);
+            dataOffsets[i] = data.size();
+            writeControl(data, TYPE_MAP, 2);
+            writeString(data, "continent");
+            writeControl(data, TYPE_MAP, 1);
+            writeString(data, "code");
+            writeString(data, "EU");
+            writeString(data, "country");
+            writeControl(data, TYPE_MAP, 3);
+            writeString(data, "geoname_id");
+            writeUnsigned(data, TYPE_UINT32, 1000 + i);
+            writeString(data, "iso_code");
+            writeString(data, country);
+            writeString(data, "names");
+            writeControl(data, TYPE_MAP, 1);
+            writeString(data, "en");
+            writeString(data, "Country " + country);
+        }
+
+        long maxRecord = (1L << recordSize) - 1;
+        if (nodeCount + 16L + data.size() > maxRecord) {
+            throw new IllegalStateException("Database does not fit into " + recordSize + " bit records");
+        }
+
+        // Metadata
+        ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+        metadata.write(new byte[] { (byte) 0xAB, (byte) 0xCD, (byte) 0xEF });
+        metadata.write(METADATA_MARKER_NAME, 0, METADATA_MARKER_NAME.length);
+        writeControl(metadata, TYPE_MAP, 9);
+        writeString(metadata, "binary_format_major_version");
+        writeUnsigned(metadata, TYPE_UINT16, 2);
+        writeString(metadata, "binary_format_minor_version");
+        writeUnsigned(metadata, TYPE_UINT16, 0);
+        writeString(metadata, "build_epoch");
+        writeUnsigned(metadata, TYPE_UINT64, 1_500_000_000L);
+        writeString(metadata, "database_type");
+        writeString(metadata, "GeoLite2-Country");
+        writeString(metadata, "description");
+        writeControl(metadata, TYPE_MAP, 1);
+        writeString(metadata, "en");
+        writeString(metadata, "GeoIPAPI synthetic fixture");
+        writeString(metadata, "ip_version");
+        writeUnsigned(metadata, TYPE_UINT16, 6);
+        writeString(metadata, "languages");
+        writeControl(metadata, TYPE_ARRAY, 1);
+        writeString(metadata, "en");
+        writeString(metadata, "node_count");
+        writeUnsigned(metadata, TYPE_UINT32, nodeCount);
+        writeString(metadata, "record_size");
+        writeUnsigned(metadata, TYPE_UINT16, recordSize);
+
+        // Search tree can get large, so it is streamed straight to the file
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            for (int node = 0; node < nodeCount; node++) {
+                long leftRecord = toRecord(left[node], dataOffsets);
+                long rightRecord = toRecord(right[node], dataOffsets);
+                if (recordSize == 28) {
+                    writeBytes(out, leftRecord & 0xFFFFFF, 3);
+                    out.write((int) ((leftRecord >>> 24) << 4 | rightRecord >>> 24));
+                    writeBytes(out, rightRecord & 0xFFFFFF, 3);
+                } else {
+                    writeBytes(out, leftRecord, recordSize / 8);
+                    writeBytes(out, rightRecord, recordSize / 8);
+                }
+            }
+            out.write(new byte[16]);
+            data.writeTo(out);
+            metadata.writeTo(out);
+        }
+    }
+
+    private int createNode(int fill) {
+        if (nodeCount == left.length) {
+            left = Arrays.copyOf(left, nodeCount * 2);
+            right = Arrays.copyOf(right, nodeCount * 2);
+        }
+        left[nodeCount] = fill;
+        right[nodeCount] = fill;
+        return nodeCount++;
+    }
+
+    private long toRecord(int child, int[] dataOffsets) {
+        if (child >= 0) {
+            return child;
+        } else if (child == EMPTY) {
+            return nodeCount;
+        }
+        return nodeCount + 16L + dataOffsets[-(child + 2)];
+    }
+
+    private static boolean bit(long high, long low, int depth) {
+        long word = depth < 64 ? high >>> (63 - depth) : low >>> (127 - depth);
+        return (word & 1) != 0;
+    }
+
+    private static void writeControl(ByteArrayOutputStream out, int type, int size) {
+        int sizeBits = size < 29 ? size : size < 285 ? 29 : size < 65821 ? 30 : 31;
+        if (type > 7) {
+            out.write(sizeBits);
+            out.write(type - 7);
+        } else {
+            out.write(type << 5 | sizeBits);
+        }
+
+        if (sizeBits == 29) {
+            out.write(size - 29);
+        } else if (sizeBits == 30) {
+            writeBytes(out, size - 285, 2);
+        } else if (sizeBits == 31) {
+            writeBytes(out, size - 65821, 3);
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeControl(out, TYPE_STRING, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeUnsigned(ByteArrayOutputStream out, int type, long value) {
+        int length = (Long.SIZE - Long.numberOfLeadingZeros(value) + 7) / 8;
+        writeControl(out, type, length);
+        writeBytes(out, value, length);
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, long value, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            out.write((int) (value >>> (8 * i)));
+        }
+    }
+
+    private static void writeBytes(OutputStream out, long value, int length) throws IOException {
+        for (int i = length - 1; i >= 0; i--) {
+            out.write((int) (value >>> (8 * i)));
+        }
+    }
+}
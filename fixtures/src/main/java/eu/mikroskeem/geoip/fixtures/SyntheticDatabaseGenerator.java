@@ -0,0 +1,432 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoip.fixtures;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Generates synthetic MaxMind country databases of configurable size and shape.
+ * <p>
+ * Networks don't overlap. They are placed into random free spots of the public unicast address space
+ * ({@code 1.0.0.0} - {@code 223.255.255.255} and {@code 2000::/3}), largest networks first, and space
+ * not taken by any network stays unassigned. Same settings and seed always produce the same database.
+ *
+ * @author Mark Vainomaa
+ */
+public final class SyntheticDatabaseGenerator {
+    private static final long IPV4_START = 0x0100_0000L;
+    private static final long IPV4_END = 0xE000_0000L;
+    private static final long IPV6_START = 0x2000_0000_0000_0000L;
+    private static final long IPV6_END = 0x4000_0000_0000_0000L;
+
+    private long seed = 0L;
+    private int networkCount = 400_000;
+    private double ipv6Share = 0.3;
+    private Map<Integer, Double> ipv4PrefixLengths = weights(
+            16, 4, 18, 6, 19, 6, 20, 10, 21, 10, 22, 18, 23, 16, 24, 30
+    );
+    private Map<Integer, Double> ipv6PrefixLengths = weights(
+            29, 10, 32, 35, 36, 10, 40, 10, 44, 10, 48, 25
+    );
+    private Map<String, Double> countries = defaultCountries();
+    private int recordSize = 28;
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public SyntheticDatabaseGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public int getNetworkCount() {
+        return networkCount;
+    }
+
+    /**
+     * Sets amount of networks in the database
+     *
+     * @param networkCount Network count
+     * @return this {@link SyntheticDatabaseGenerator} instance
+     */
+    public SyntheticDatabaseGenerator setNetworkCount(int networkCount) {
+        if (networkCount < 0) {
+            throw new IllegalArgumentException("Network count must not be negative");
+        }
+        this.networkCount = networkCount;
+        return this;
+    }
+
+    public double getIpv6Share() {
+        return ipv6Share;
+    }
+
+    /**
+     * Sets share of IPv6 networks
+     *
+     * @param ipv6Share Share between 0 and 1
+     * @return this {@link SyntheticDatabaseGenerator} instance
+     */
+    public SyntheticDatabaseGenerator setIpv6Share(double ipv6Share) {
+        if (ipv6Share < 0 || ipv6Share > 1) {
+            throw new IllegalArgumentException("IPv6 share must be between 0 and 1");
+        }
+        this.ipv6Share = ipv6Share;
+        return this;
+    }
+
+    public Map<Integer, Double> getIpv4PrefixLengths() {
+        return Collections.unmodifiableMap(ipv4PrefixLengths);
+    }
+
+    /**
+     * Sets IPv4 network prefix length distribution
+     *
+     * @param prefixLengths Relative weights of prefix lengths, 8-32
+     * @return this {@link SyntheticDatabaseGenerator} instance
+     */
+    public SyntheticDatabaseGenerator setIpv4PrefixLengths(Map<Integer, ? extends Number> prefixLengths) {
+        this.ipv4PrefixLengths = checkWeights(prefixLengths, 8, 32);
+        return this;
+    }
+
+    public Map<Integer, Double> getIpv6PrefixLengths() {
+        return Collections.unmodifiableMap(ipv6PrefixLengths);
+    }
+
+    /**
+     * Sets IPv6 network prefix length distribution
+     *
+     * @param prefixLengths Relative weights of prefix lengths, 3-64
+     * @return this {@link SyntheticDatabaseGenerator} instance
+     */
+    public SyntheticDatabaseGenerator setIpv6PrefixLengths(Map<Integer, ? extends Number> prefixLengths) {
+        this.ipv6PrefixLengths = checkWeights(prefixLengths, 3, 64);
+        return this;
+    }
+
+    public Map<String, Double> getCountries() {
+        return Collections.unmodifiableMap(countries);
+    }
+
+    /**
+     * Sets country distribution
+     *
+     * @param countries Relative weights of two letter country ISO codes
+     * @return this {@link SyntheticDatabaseGenerator} instance
+     */
+    public SyntheticDatabaseGenerator setCountries(Map<String, ? extends Number> countries) {
+        for (String country : countries.keySet()) {
+            if (country.length() != 2) {
+                throw new IllegalArgumentException("Invalid country ISO code: " + country);
+            }
+        }
+        this.countries = checkWeights(countries, null, null);
+        return this;
+    }
+
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    /**
+     * Sets search tree record size. 24 bit records fit roughly up to 2 million nodes, 28 bit records up to
+     * 268 million
+     *
+     * @param recordSize Record size, either 24, 28 or 32
+     * @return this {@link SyntheticDatabaseGenerator} instance
+     */
+    public SyntheticDatabaseGenerator setRecordSize(int recordSize) {
+        if (recordSize != 24 && recordSize != 28 && recordSize != 32) {
+            throw new IllegalArgumentException("Invalid record size: " + recordSize);
+        }
+        this.recordSize = recordSize;
+        return this;
+    }
+
+    /**
+     * Generates the database search tree
+     *
+     * @return Writer holding generated networks
+     * @throws IllegalStateException When networks don't fit into the address space
+     */
+    public MmdbFixtureWriter generate() {
+        Random random = new Random(seed);
+        MmdbFixtureWriter writer = new MmdbFixtureWriter();
+        String[] countryCodes = countries.keySet().toArray(new String[0]);
+        double[] countryWeights = cumulative(countries);
+
+        int ipv6Count = (int) Math.round(networkCount * ipv6Share);
+        int[] ipv4Prefixes = pickPrefixLengths(networkCount - ipv6Count, ipv4PrefixLengths, random);
+        int[] ipv6Prefixes = pickPrefixLengths(ipv6Count, ipv6PrefixLengths, random);
+
+        // IPv4 networks are allocated in address units, IPv6 networks in /64 units
+        checkSpace("IPv4", ipv4Prefixes, 32, IPV4_END - IPV4_START);
+        checkSpace("IPv6", ipv6Prefixes, 64, IPV6_END - IPV6_START);
+        BlockAllocator ipv4 = new BlockAllocator(IPV4_START, IPV4_END, 24);
+        for (int prefixLength : ipv4Prefixes) {
+            long address = ipv4.allocate(32 - prefixLength, random);
+            writer.insertIpv4((int) address, prefixLength, pick(countryCodes, countryWeights, random));
+        }
+        BlockAllocator ipv6 = new BlockAllocator(IPV6_START, IPV6_END, 61);
+        for (int prefixLength : ipv6Prefixes) {
+            long high = ipv6.allocate(64 - prefixLength, random);
+            writer.insert(high, 0L, prefixLength, pick(countryCodes, countryWeights, random));
+        }
+        return writer;
+    }
+
+    /**
+     * Generates the database and writes it into given file
+     *
+     * @param file Target file
+     * @return Writer holding generated networks
+     * @throws IOException When writing fails
+     */
+    public MmdbFixtureWriter write(Path file) throws IOException {
+        MmdbFixtureWriter writer = generate();
+        writer.write(file, recordSize);
+        return writer;
+    }
+
+    /**
+     * Command line entry point. Usage: {@code <output file> [--networks=N] [--ipv6-share=F] [--seed=N]
+     * [--record-size=N] [--ipv4-prefixes=24:30,22:20,...] [--ipv6-prefixes=48:25,32:35,...]
+     * [--countries=US:10,DE:5,...]}
+     *
+     * @param args Arguments
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: <output file> [--networks=N] [--ipv6-share=F] [--seed=N] [--record-size=N]"
+                    + " [--ipv4-prefixes=LENGTH:WEIGHT,...] [--ipv6-prefixes=LENGTH:WEIGHT,...]"
+                    + " [--countries=CODE:WEIGHT,...]");
+            System.exit(1);
+            return;
+        }
+
+        Path file = Paths.get(args[0]);
+        SyntheticDatabaseGenerator generator = new SyntheticDatabaseGenerator();
+        for (String arg : Arrays.asList(args).subList(1, args.length)) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator == -1) {
+                throw new IllegalArgumentException("Invalid option: " + arg);
+            }
+            String value = arg.substring(separator + 1);
+            switch (arg.substring(2, separator)) {
+                case "networks":
+                    generator.setNetworkCount(Integer.parseInt(value));
+                    break;
+                case "ipv6-share":
+                    generator.setIpv6Share(Double.parseDouble(value));
+                    break;
+                case "seed":
+                    generator.setSeed(Long.parseLong(value));
+                    break;
+                case "record-size":
+                    generator.setRecordSize(Integer.parseInt(value));
+                    break;
+                case "ipv4-prefixes":
+                    generator.setIpv4PrefixLengths(parsePrefixLengths(value));
+                    break;
+                case "ipv6-prefixes":
+                    generator.setIpv6PrefixLengths(parsePrefixLengths(value));
+                    break;
+                case "countries":
+                    Map<String, Double> countries = new LinkedHashMap<>();
+                    parseWeights(value).forEach((key, weight) -> countries.put(key.toUpperCase(), weight));
+                    generator.setCountries(countries);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        long start = System.nanoTime();
+        MmdbFixtureWriter writer = generator.write(file);
+        System.out.printf("Wrote %d networks (%d search tree nodes, %d bytes) to %s in %d ms%n",
+                generator.getNetworkCount(), writer.getNodeCount(), Files.size(file), file,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static int[] pickPrefixLengths(int count, Map<Integer, Double> prefixLengths, Random random) {
+        Integer[] lengths = prefixLengths.keySet().toArray(new Integer[0]);
+        double[] weights = cumulative(prefixLengths);
+        int[] picked = new int[count];
+        for (int i = 0; i < count; i++) {
+            picked[i] = pick(lengths, weights, random);
+        }
+
+        // Largest networks go first, so smaller ones can fill whatever is left around them
+        Arrays.sort(picked);
+        return picked;
+    }
+
+    private static void checkSpace(String family, int[] prefixLengths, int bits, long available) {
+        long required = 0;
+        for (int prefixLength : prefixLengths) {
+            required += 1L << (bits - prefixLength);
+            if (required > available) {
+                throw new IllegalStateException(family + " networks do not fit into the address space, "
+                        + "use fewer or smaller networks");
+            }
+        }
+    }
+
+    private static <T> T pick(T[] values, double[] cumulativeWeights, Random random) {
+        double target = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        int index = Arrays.binarySearch(cumulativeWeights, target);
+        return values[Math.min(index < 0 ? -index - 1 : index + 1, values.length - 1)];
+    }
+
+    private static double[] cumulative(Map<?, Double> weights) {
+        double[] cumulative = new double[weights.size()];
+        double total = 0;
+        int i = 0;
+        for (double weight : weights.values()) {
+            cumulative[i++] = total += weight;
+        }
+        return cumulative;
+    }
+
+    private static <K> Map<K, Double> checkWeights(Map<K, ? extends Number> weights,
+                                                   Integer minimum, Integer maximum) {
+        Map<K, Double> checked = new LinkedHashMap<>();
+        weights.forEach((key, weight) -> {
+            if (minimum != null && ((Integer) key < minimum || (Integer) key > maximum)) {
+                throw new IllegalArgumentException("Value " + key + " is not between " + minimum + " and " + maximum);
+            }
+            if (!(weight.doubleValue() > 0)) {
+                throw new IllegalArgumentException("Weight of " + key + " must be positive");
+            }
+            checked.put(key, weight.doubleValue());
+        });
+        if (checked.isEmpty()) {
+            throw new IllegalArgumentException("At least one weight is required");
+        }
+        return checked;
+    }
+
+    private static Map<Integer, Double> weights(int... pairs) {
+        Map<Integer, Double> weights = new TreeMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            weights.put(pairs[i], (double) pairs[i + 1]);
+        }
+        return weights;
+    }
+
+    private static Map<String, Double> defaultCountries() {
+        // Roughly Zipf distributed, like real address allocations
+        String[] codes = {
+                "US", "CN", "JP", "DE", "GB", "KR", "BR", "FR", "CA", "IT", "AU", "NL", "RU", "IN", "TW", "ES",
+                "SE", "MX", "PL", "ZA", "EE", "FI", "NO", "UA", "TR", "AR", "EG", "SG", "HK", "ID", "VN", "TH"
+        };
+        Map<String, Double> countries = new LinkedHashMap<>();
+        for (int i = 0; i < codes.length; i++) {
+            countries.put(codes[i], 1.0 / (i + 1));
+        }
+        return countries;
+    }
+
+    private static Map<Integer, Double> parsePrefixLengths(String value) {
+        Map<Integer, Double> prefixLengths = new TreeMap<>();
+        parseWeights(value).forEach((key, weight) -> prefixLengths.put(Integer.parseInt(key), weight));
+        return prefixLengths;
+    }
+
+    private static Map<String, Double> parseWeights(String value) {
+        Map<String, Double> weights = new LinkedHashMap<>();
+        for (String pair : value.split(",")) {
+            int separator = pair.indexOf(':');
+            if (separator == -1) {
+                throw new IllegalArgumentException("Expected KEY:WEIGHT, got " + pair);
+            }
+            weights.put(pair.substring(0, separator).trim(), Double.parseDouble(pair.substring(separator + 1)));
+        }
+        return weights;
+    }
+
+    /**
+     * Buddy allocator handing out random aligned blocks from an address range
+     */
+    private static final class BlockAllocator {
+        /* Free block starts, by block size order */
+        private final long[][] free = new long[64][];
+        private final int[] freeCounts = new int[64];
+
+        BlockAllocator(long start, long end, int topOrder) {
+            for (long block = start; block < end; block += 1L << topOrder) {
+                push(topOrder, block);
+            }
+        }
+
+        long allocate(int order, Random random) {
+            int available = order;
+            while (available < free.length && freeCounts[available] == 0) {
+                available++;
+            }
+            if (available == free.length) {
+                throw new IllegalStateException("Networks do not fit into the address space");
+            }
+
+            // Take a random free block, and split it down to requested size
+            int index = random.nextInt(freeCounts[available]);
+            long block = free[available][index];
+            free[available][index] = free[available][--freeCounts[available]];
+            while (available > order) {
+                available--;
+                long half = 1L << available;
+                if (random.nextBoolean()) {
+                    push(available, block);
+                    block += half;
+                } else {
+                    push(available, block + half);
+                }
+            }
+            return block;
+        }
+
+        private void push(int order, long block) {
+            long[] blocks = free[order];
+            if (blocks == null) {
+                blocks = free[order] = new long[16];
+            } else if (freeCounts[order] == blocks.length) {
+                blocks = free[order] = Arrays.copyOf(blocks, blocks.length * 2);
+            }
+            blocks[freeCounts[order]++] = block;
+        }
+    }
+}
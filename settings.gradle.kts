@@ -4,4 +4,6 @@ include("api")
 include("common")
 include("bukkit")
 include("bungee")
-include("velocity")
\ No newline at end of file
+include("velocity")
+include("fixtures")
+include("benchmarks")
\ No newline at end of file
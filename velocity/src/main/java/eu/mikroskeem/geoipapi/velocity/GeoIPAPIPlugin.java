@@ -34,7 +34,9 @@ import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.ProxyServer;
 import eu.mikroskeem.geoip.GeoIPAPI;
 import eu.mikroskeem.geoip.common.GeoIPDownloader;
+import eu.mikroskeem.geoip.common.UpdateSource;
 import eu.mikroskeem.geoip.impl.GeoIPAPIImpl;
+import eu.mikroskeem.geoip.impl.GeoIPAPISettings;
 import eu.mikroskeem.implinjector.ImplInjector;
 import ninja.leaping.configurate.ConfigurationNode;
 import ninja.leaping.configurate.yaml.YAMLConfigurationLoader;
@@ -44,7 +46,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.concurrent.TimeUnit;
+import java.nio.file.Paths;
 
 @Plugin(id = "geoipapi", name = "GeoIPAPI", version = "0.0.1-SNAPSHOT", /* TODO: keep in sync */
         description = "Provides GeoIP database access to plugins",
@@ -74,32 +76,42 @@ public final class GeoIPAPIPlugin {
         }
 
         String licenseKey = config.getNode("geolite_license_key").getString();
-        if (licenseKey == null || licenseKey.isEmpty()) {
-            logger.error("License key is not set, unable to download the database from MaxMind!");
-            return;
-        }
 
         // Set up database
         logger.info("Setting up GeoIP database...");
-        Path databaseFolder = dataFolder.resolve("database");
+        String sharedDatabaseFolder = config.getNode("shared_database_directory").getString("");
+        boolean sharedDatabase = !sharedDatabaseFolder.isEmpty();
+        Path databaseFolder = sharedDatabase ? Paths.get(sharedDatabaseFolder) : dataFolder.resolve("database");
         Path hashIgnoreFile = dataFolder.resolve(".ignorehash");
         boolean ignoreHash = Files.exists(hashIgnoreFile);
+        UpdateSource updateSource;
+        try {
+            updateSource = UpdateSource.fromName(config.getNode("update_source").getString("maxmind"), licenseKey, !ignoreHash, databaseFolder);
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid update source: {}", e.getMessage());
+            return;
+        }
         Path databaseFile;
         try {
             if (ignoreHash) {
                 logger.warn("Ignoring GeoIP database checksum mismatch");
             }
-            databaseFile = GeoIPDownloader.setupDatabase(null, databaseFolder, !ignoreHash, licenseKey);
+            databaseFile = GeoIPDownloader.setupDatabase(updateSource, databaseFolder);
         } catch (Exception e) {
             logger.error("Failed to set up GeoIP database! Disabling plugin", e);
             return;
         }
 
         // Set up API
-        api = new GeoIPAPIImpl(databaseFile, licenseKey);
+        GeoIPAPISettings settings = GeoIPAPISettings.fromConfig(key -> config.getNode(key).getValue(), logger);
+        if (sharedDatabase) {
+            settings.setSharedDatabase(true).setInstanceDirectory(dataFolder);
+        }
+
+        api = new GeoIPAPIImpl(databaseFile, licenseKey, settings);
         try {
             api.initializeDatabase();
-            api.setupUpdater(!ignoreHash, 2, TimeUnit.DAYS);
+            api.setupUpdater(updateSource, settings.getUpdateCheckInterval(), settings.getUpdateCheckIntervalUnit());
             ImplInjector.inject(GeoIPAPI.class, "INSTANCE", api);
         } catch (Exception e) {
             logger.error("Failed to initialize API", e);
@@ -107,8 +119,10 @@ public final class GeoIPAPIPlugin {
         }
 
         logger.info("GeoIP API initialized. API data is provided by MaxMind");
-        proxy.getEventManager().register(this, injector.getInstance(PlayerConnectionListener.class));
+        proxy.getEventManager().register(this, new PlayerConnectionListener(logger, api.getPlayerLookups()));
         proxy.getCommandManager().register("geoiplookup", injector.getInstance(GeoIpLookupCommand.class));
+        proxy.getCommandManager().register("geoipstats", new GeoIpStatsCommand(api.getMetrics()));
+        proxy.getCommandManager().register("geoipupdate", new GeoIpUpdateCommand(api));
     }
 
     private Path saveDefaultConfig() {
@@ -0,0 +1,57 @@
+/*
+ * This file is part of project GeoIPAPI, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2019-2020 Mark Vainomaa <mikroskeem@mikroskeem.eu>
+ * Copyright (c) Contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package eu.mikroskeem.geoipapi.velocity;
+
+import com.velocitypowered.api.command.Command;
+import com.velocitypowered.api.command.CommandSource;
+import eu.mikroskeem.geoip.impl.GeoIPAPIImpl;
+import net.kyori.text.TextComponent;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * @author Mark Vainomaa
+ */
+public final class GeoIpUpdateCommand implements Command {
+    private final GeoIPAPIImpl api;
+
+    GeoIpUpdateCommand(GeoIPAPIImpl api) {
+        this.api = api;
+    }
+
+    @Override
+    public void execute(CommandSource sender, String[] args) {
+        sender.sendMessage(TextComponent.of("Checking for GeoIP database update..."));
+        api.checkForUpdates().whenComplete((result, error) -> {
+            String message = error != null ? "Failed to check for GeoIP database update: " + error.getMessage() : result.getDescription();
+            sender.sendMessage(TextComponent.of(message));
+        });
+    }
+
+    @Override
+    public boolean hasPermission(CommandSource source, @NonNull String[] args) {
+        return source.hasPermission("geoipapi.geoipupdate");
+    }
+}
@@ -25,23 +25,42 @@
 
 package eu.mikroskeem.geoipapi.velocity;
 
-import com.google.inject.Inject;
 import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.connection.PostLoginEvent;
 import com.velocitypowered.api.event.connection.PreLoginEvent;
-import eu.mikroskeem.geoip.GeoIPAPI;
+import eu.mikroskeem.geoip.CountryCode;
+import eu.mikroskeem.geoip.impl.PlayerLookups;
 import org.slf4j.Logger;
 
 /**
  * @author Mark Vainomaa
  */
 public final class PlayerConnectionListener {
-    @Inject private Logger logger;
+    private final Logger logger;
+    private final PlayerLookups playerLookups;
+
+    PlayerConnectionListener(Logger logger, PlayerLookups playerLookups) {
+        this.logger = logger;
+        this.playerLookups = playerLookups;
+    }
 
     @Subscribe
     public void on(PreLoginEvent event) {
         final String username = event.getUsername();
-        GeoIPAPI.INSTANCE.getCountryByIPAsync(event.getConnection().getRemoteAddress().getAddress()).thenAccept((country) -> {
-            logger.info("Player {} is connecting from {}", username, country);
+        playerLookups.prefetch(event.getConnection().getRemoteAddress()).thenAccept((result) -> {
+            CountryCode country = result.getCountry();
+            logger.info("Player {} is connecting from {}", username, country != null ? country.getCode() : null);
         });
     }
+
+    @Subscribe
+    public void on(PostLoginEvent event) {
+        playerLookups.bind(event.getPlayer().getRemoteAddress(), event.getPlayer().getUniqueId());
+    }
+
+    @Subscribe
+    public void on(DisconnectEvent event) {
+        playerLookups.remove(event.getPlayer().getUniqueId(), event.getPlayer().getRemoteAddress());
+    }
 }